@@ -0,0 +1,19 @@
+package com.reactivespring.moviesinfoservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+
+@Configuration
+public class CodecConfig {
+
+    // after Boot's own Jackson customizer, which registers the default encoder
+    @Bean
+    @Order(1)
+    public CodecCustomizer streamingJsonCodecCustomizer(ObjectMapper objectMapper) {
+        return configurer -> configurer.defaultCodecs()
+                .jackson2JsonEncoder(new StreamingJackson2JsonEncoder(objectMapper));
+    }
+}
@@ -0,0 +1,44 @@
+package com.reactivespring.moviesinfoservice.config;
+
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Creates the indexes declared on the documents with {@code @Indexed} and {@code @CompoundIndex}
+ * at startup, Spring Data no longer creates them automatically. Creating an index that already
+ * exists with the same definition is a no-op.
+ */
+@Component
+@Slf4j
+public class MongoIndexInitializer {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initIndexes() {
+        ensureIndexes(MovieInfo.class).block();
+    }
+
+    public Mono<Void> ensureIndexes(Class<?> documentType) {
+        var indexResolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        var indexOperations = mongoTemplate.indexOps(documentType);
+        return Flux.fromIterable(indexResolver.resolveIndexFor(documentType))
+                .concatMap(indexOperations::ensureIndex)
+                .doOnNext(indexName -> log.info("Ensured index {} on {}", indexName, documentType.getSimpleName()))
+                .then();
+    }
+}
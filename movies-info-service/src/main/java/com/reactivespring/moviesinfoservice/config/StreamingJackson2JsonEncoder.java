@@ -0,0 +1,64 @@
+package com.reactivespring.moviesinfoservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes a {@code Flux} as a JSON array element by element, where the default encoder first collects
+ * the whole {@code Flux} into a list. Only the element being encoded is held in memory, and the
+ * response is read from the database no faster than the client takes it.
+ * <p>
+ * The status is sent with the first bytes, so nothing is written until the first element (or the
+ * end of an empty {@code Flux}) arrives: an error before it still becomes an error response. An
+ * error after it can no longer be: the connection is closed and the client sees a truncated array.
+ */
+public class StreamingJackson2JsonEncoder extends Jackson2JsonEncoder {
+
+    private static final byte[] ARRAY_START = "[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = ",".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ARRAY_END = "]".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_ARRAY = "[]".getBytes(StandardCharsets.UTF_8);
+
+    public StreamingJackson2JsonEncoder(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, @Nullable MimeType mimeType,
+                                   @Nullable Map<String, Object> hints) {
+
+        if (inputStream instanceof Mono || isStreamingMediaType(mimeType)) {
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+        return Flux.from(inputStream).switchOnFirst((first, all) -> {
+            if (first.isOnComplete()) {
+                return Mono.fromSupplier(() -> bufferFactory.wrap(EMPTY_ARRAY));
+            }
+            // an error as the first signal passes through before any byte is written
+            var elements = all
+                    .index()
+                    .concatMap(indexed -> {
+                        var element = encodeValue(indexed.getT2(), bufferFactory, elementType, mimeType, hints);
+                        return Flux.just(bufferFactory.wrap(indexed.getT1() == 0 ? ARRAY_START : SEPARATOR), element);
+                    });
+            return Flux.concat(elements, Mono.fromSupplier(() -> bufferFactory.wrap(ARRAY_END)));
+        });
+    }
+
+    private boolean isStreamingMediaType(@Nullable MimeType mimeType) {
+        return mimeType != null && getStreamingMediaTypes().stream()
+                .anyMatch(streamingMediaType -> streamingMediaType.equalsTypeAndSubtype(mimeType));
+    }
+}
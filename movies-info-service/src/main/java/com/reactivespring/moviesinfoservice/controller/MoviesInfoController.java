@@ -1,15 +1,25 @@
 package com.reactivespring.moviesinfoservice.controller;
 
+import com.reactivespring.moviesinfoservice.domain.BulkItemResult;
+import com.reactivespring.moviesinfoservice.domain.DecadeCount;
 import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.MovieInfoEvent;
+import com.reactivespring.moviesinfoservice.domain.TypeaheadSuggestion;
+import com.reactivespring.moviesinfoservice.domain.YearCount;
 import com.reactivespring.moviesinfoservice.service.MoviesInfoService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.server.EntityResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
+import java.time.Duration;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1")
@@ -17,22 +27,85 @@ public class MoviesInfoController {
 
     private MoviesInfoService moviesInfoService;
 
+    @Value("${movieInfos.events.heartbeat:15s}")
+    private Duration heartbeatInterval;
+
     public MoviesInfoController(MoviesInfoService moviesInfoService) {
         this.moviesInfoService = moviesInfoService;
     }
 
     @GetMapping("/movieinfos")
-    public Flux<MovieInfo> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year) {
+    public Flux<MovieInfo> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year,
+                                            @RequestParam(value = "ids", required = false) List<String> ids,
+                                            @RequestParam(value = "yearFrom", required = false) Integer yearFrom,
+                                            @RequestParam(value = "yearTo", required = false) Integer yearTo,
+                                            @RequestParam(value = "cast", required = false) String cast,
+                                            @RequestParam(value = "afterName", required = false) String afterName,
+                                            @RequestParam(value = "after", required = false) String after,
+                                            @RequestParam(value = "limit", required = false) Integer limit,
+                                            @RequestParam(value = "fields", required = false) List<String> fields) {
 
+        if (ids != null) {
+            return moviesInfoService.getMovieInfosByIds(ids, fields);
+        }
         if (year != null) {
-            return moviesInfoService.getMovieInfoByYear(year);
+            return moviesInfoService.getMovieInfoByYear(year, fields);
+        }
+        if (yearFrom != null || yearTo != null) {
+            return moviesInfoService.getMovieInfosByYearRange(yearFrom, yearTo, fields);
         }
-        return moviesInfoService.getAllMovieInfos();
+        if (cast != null) {
+            return moviesInfoService.getMovieInfosByCast(cast, afterName, after, limit, fields);
+        }
+        return moviesInfoService.getAllMovieInfos(after, limit, fields);
+    }
+
+    @GetMapping(value = "/movieinfos", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfo> streamAllMovieInfos(@RequestParam(value = "after", required = false) String after,
+                                               @RequestParam(value = "fields", required = false) List<String> fields) {
+        return moviesInfoService.streamAllMovieInfos(after, fields);
+    }
+
+    /**
+     * Server-sent events for every movie info created, updated or deleted while the client is connected.
+     * A comment is sent right away, so the client knows it is subscribed, and then periodically,
+     * so idle connections are not closed by proxies.
+     */
+    @GetMapping(value = "/movieinfos/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MovieInfoEvent>> streamMovieInfoEvents() {
+        var heartbeats = Flux.interval(Duration.ZERO, heartbeatInterval)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<MovieInfoEvent>builder().comment("heartbeat").build());
+        return moviesInfoService.streamMovieInfoEvents()
+                .map(event -> ServerSentEvent.builder(event)
+                        .event(event.getType().name())
+                        .build())
+                .publish(events -> Flux.merge(events, heartbeats.takeUntilOther(events.ignoreElements())));
+    }
+
+    /**
+     * Movies with a name or cast member word starting with {@code q}, most popular first.
+     */
+    @GetMapping("/movieinfos/typeahead")
+    public Flux<TypeaheadSuggestion> suggestMovieInfos(@RequestParam("q") String prefix,
+                                                       @RequestParam(value = "limit", required = false) Integer limit) {
+        return Flux.fromIterable(moviesInfoService.suggestMovieInfos(prefix, limit));
+    }
+
+    @GetMapping("/movieinfos/stats/by-year")
+    public Flux<YearCount> getMovieInfoCountsByYear() {
+        return moviesInfoService.getMovieInfoCountsByYear();
+    }
+
+    @GetMapping("/movieinfos/stats/by-decade")
+    public Flux<DecadeCount> getMovieInfoCountsByDecade() {
+        return moviesInfoService.getMovieInfoCountsByDecade();
     }
 
     @GetMapping("/movieinfos/{id}")
-    public Mono<ResponseEntity<MovieInfo>> getAllMovieInfoById(@PathVariable String id) {
-        return moviesInfoService.getAllMovieInfoById(id)
+    public Mono<ResponseEntity<MovieInfo>> getAllMovieInfoById(@PathVariable String id,
+                                                               @RequestParam(value = "fields", required = false) List<String> fields) {
+        return moviesInfoService.getAllMovieInfoById(id, fields)
                 .map(ResponseEntity.ok()::body)
                 .switchIfEmpty(Mono.justOrEmpty(ResponseEntity.notFound().build()));
     }
@@ -43,6 +116,15 @@ public class MoviesInfoController {
         return moviesInfoService.addMovieInfo(movieInfo);
     }
 
+    /**
+     * Accepts one movie info per line and streams back one result per line as the batches are written.
+     */
+    @PostMapping(value = "/movieinfos/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BulkItemResult> addMovieInfos(@RequestBody Flux<MovieInfo> movieInfos) {
+        return moviesInfoService.addMovieInfos(movieInfos);
+    }
+
     @PutMapping("/movieinfos/{id}")
     public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@RequestBody MovieInfo movieInfo, @PathVariable String id) {
         return moviesInfoService.updateMovieInfo(movieInfo, id)
@@ -51,6 +133,13 @@ public class MoviesInfoController {
                 .log();
     }
 
+    @PatchMapping("/movieinfos/{id}")
+    public Mono<ResponseEntity<MovieInfo>> patchMovieInfo(@RequestBody MovieInfo movieInfo, @PathVariable String id) {
+        return moviesInfoService.patchMovieInfo(movieInfo, id)
+                .map(ResponseEntity.ok()::body)
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
+    }
+
     @DeleteMapping("/movieinfos/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> deleteMovieInfo(@PathVariable String id) {
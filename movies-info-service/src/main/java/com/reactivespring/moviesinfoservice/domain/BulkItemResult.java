@@ -0,0 +1,37 @@
+package com.reactivespring.moviesinfoservice.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one line of a bulk upload, {@code index} is the zero based position of the line.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkItemResult {
+
+    public enum Status {
+        CREATED, INVALID, FAILED
+    }
+
+    private long index;
+    private String movieInfoId;
+    private Status status;
+    private String error;
+
+    public static BulkItemResult created(long index, String movieInfoId) {
+        return new BulkItemResult(index, movieInfoId, Status.CREATED, null);
+    }
+
+    public static BulkItemResult invalid(long index, String error) {
+        return new BulkItemResult(index, null, Status.INVALID, error);
+    }
+
+    public static BulkItemResult failed(long index, String movieInfoId, String error) {
+        return new BulkItemResult(index, movieInfoId, Status.FAILED, error);
+    }
+}
@@ -0,0 +1,15 @@
+package com.reactivespring.moviesinfoservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DecadeCount {
+
+    // the first year of the decade, 2000 for 2000 to 2009
+    private Integer decade;
+    private long count;
+}
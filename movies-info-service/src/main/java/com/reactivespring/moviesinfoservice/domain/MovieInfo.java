@@ -4,6 +4,10 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -16,12 +20,19 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+@CompoundIndexes({
+        // serves findByYear in name order and the year range lookups
+        @CompoundIndex(name = "year_name", def = "{'year': 1, 'name': 1}"),
+        // multikey, one entry per cast member: serves the actor lookups in (name, id) page order
+        @CompoundIndex(name = "cast_name_id", def = "{'cast': 1, 'name': 1, '_id': 1}")
+})
 public class MovieInfo {
 
     @Id
     private String movieInfoId;
 
     @NotBlank(message = "movieInfo.name must be present")
+    @Indexed
     private String name;
 
     @NotNull
@@ -32,5 +43,12 @@ public class MovieInfo {
 
     private LocalDate release_date;
 
+    // incremented by every update, an update that passes a stale version is rejected
+    @Version
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null);
+    }
 
 }
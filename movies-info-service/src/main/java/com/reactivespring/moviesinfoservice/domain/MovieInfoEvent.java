@@ -0,0 +1,36 @@
+package com.reactivespring.moviesinfoservice.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A change to a movie info, {@code movieInfo} is the state after the change and absent for deletions.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieInfoEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private Type type;
+    private String movieInfoId;
+    private MovieInfo movieInfo;
+
+    public static MovieInfoEvent created(MovieInfo movieInfo) {
+        return new MovieInfoEvent(Type.CREATED, movieInfo.getMovieInfoId(), movieInfo);
+    }
+
+    public static MovieInfoEvent updated(MovieInfo movieInfo) {
+        return new MovieInfoEvent(Type.UPDATED, movieInfo.getMovieInfoId(), movieInfo);
+    }
+
+    public static MovieInfoEvent deleted(String movieInfoId) {
+        return new MovieInfoEvent(Type.DELETED, movieInfoId, null);
+    }
+}
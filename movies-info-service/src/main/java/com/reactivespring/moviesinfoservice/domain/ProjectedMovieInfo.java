@@ -0,0 +1,16 @@
+package com.reactivespring.moviesinfoservice.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A movie info read with a {@code fields} projection. The fields left out are not written as nulls,
+ * a whole movie info writes all of its fields.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProjectedMovieInfo extends MovieInfo {
+
+    public ProjectedMovieInfo(MovieInfo movieInfo) {
+        super(movieInfo.getMovieInfoId(), movieInfo.getName(), movieInfo.getYear(), movieInfo.getCast(),
+                movieInfo.getRelease_date(), movieInfo.getVersion());
+    }
+}
@@ -0,0 +1,15 @@
+package com.reactivespring.moviesinfoservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TypeaheadSuggestion {
+
+    private String movieInfoId;
+    private String name;
+    private Integer year;
+}
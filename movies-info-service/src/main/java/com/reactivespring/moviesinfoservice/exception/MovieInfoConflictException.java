@@ -0,0 +1,9 @@
+package com.reactivespring.moviesinfoservice.exception;
+
+public class MovieInfoConflictException extends RuntimeException {
+    private String message;
+    public MovieInfoConflictException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
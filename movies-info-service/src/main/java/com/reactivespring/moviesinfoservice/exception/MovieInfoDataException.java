@@ -0,0 +1,9 @@
+package com.reactivespring.moviesinfoservice.exception;
+
+public class MovieInfoDataException extends RuntimeException {
+    private String message;
+    public MovieInfoDataException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
@@ -1,14 +1,18 @@
 package com.reactivespring.moviesinfoservice.repository;
 
 import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String> {
+public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String>, MovieInfoRepositoryCustom {
 
     Flux<MovieInfo> findByYear(Integer year);
 
     Mono<MovieInfo> findFirstByName(String name);
 
+    Flux<MovieInfo> findByYearBetween(Range<Integer> years, Sort sort);
+
 }
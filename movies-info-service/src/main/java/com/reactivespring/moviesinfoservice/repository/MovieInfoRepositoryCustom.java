@@ -0,0 +1,61 @@
+package com.reactivespring.moviesinfoservice.repository;
+
+import com.reactivespring.moviesinfoservice.domain.DecadeCount;
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.YearCount;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface MovieInfoRepositoryCustom {
+
+    /**
+     * Movie infos in id order starting right after {@code afterId}, or from the first one when it is null.
+     * A {@code limit} of 0 returns all of them, fetched from the cursor {@code cursorBatchSize} documents at a time.
+     * <p>
+     * Here and below {@code fields} are the only fields read besides the id, null or empty reads whole documents.
+     */
+    Flux<MovieInfo> findAllAfter(String afterId, int limit, int cursorBatchSize, Collection<String> fields);
+
+    Mono<MovieInfo> findById(String movieInfoId, Collection<String> fields);
+
+    Flux<MovieInfo> findAllById(Collection<String> movieInfoIds, Collection<String> fields);
+
+    Flux<MovieInfo> findByYearBetween(Range<Integer> years, Sort sort, Collection<String> fields);
+
+    /**
+     * Movie infos with the given cast member in (name, id) order, starting right after the movie info
+     * with {@code afterName} and {@code afterId}, or from the first one when {@code afterName} is null.
+     */
+    Flux<MovieInfo> findByCastMember(String castMember, String afterName, String afterId, int limit,
+                                     Collection<String> fields);
+
+    /**
+     * The number of movie infos per year in year order, grouped by Mongo from the year index.
+     */
+    Flux<YearCount> countByYear();
+
+    /**
+     * The number of movie infos per decade in decade order, grouped by Mongo from the year index.
+     */
+    Flux<DecadeCount> countByDecade();
+
+    /**
+     * Inserts the movie infos in one unordered bulk write, so a failing document does not stop the
+     * others. Generated ids are set on the inserted movie infos, the write errors are returned by
+     * position in the list.
+     */
+    Mono<Map<Integer, String>> insertAllUnordered(List<MovieInfo> movieInfos);
+
+    /**
+     * Sets the given fields (a null value removes the field) and increments the version in a single
+     * atomic findAndModify, returning the updated movie info. When {@code expectedVersion} is not null
+     * the update only applies to that version. Completes empty when no document matched.
+     */
+    Mono<MovieInfo> updateFields(String movieInfoId, Long expectedVersion, Map<String, Object> fields);
+}
@@ -0,0 +1,216 @@
+package com.reactivespring.moviesinfoservice.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.moviesinfoservice.domain.DecadeCount;
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.ProjectedMovieInfo;
+import com.reactivespring.moviesinfoservice.domain.YearCount;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class MovieInfoRepositoryImpl implements MovieInfoRepositoryCustom {
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    public MovieInfoRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Flux<MovieInfo> findAllAfter(String afterId, int limit, int cursorBatchSize, Collection<String> fields) {
+        var query = new Query()
+                .with(Sort.by("movieInfoId"))
+                .limit(limit)
+                .cursorBatchSize(cursorBatchSize);
+        if (afterId != null) {
+            query.addCriteria(afterIdCriteria(afterId));
+        }
+        return find(query, fields);
+    }
+
+    @Override
+    public Mono<MovieInfo> findById(String movieInfoId, Collection<String> fields) {
+        var query = Query.query(Criteria.where("movieInfoId").is(movieInfoId));
+        return mongoOperations.findOne(including(query, fields), MovieInfo.class)
+                .map(movieInfo -> projected(movieInfo, fields));
+    }
+
+    @Override
+    public Flux<MovieInfo> findAllById(Collection<String> movieInfoIds, Collection<String> fields) {
+        var query = Query.query(Criteria.where("movieInfoId").in(movieInfoIds));
+        return find(query, fields);
+    }
+
+    @Override
+    public Flux<MovieInfo> findByYearBetween(Range<Integer> years, Sort sort, Collection<String> fields) {
+        var query = new Query().with(sort);
+        var lowerBound = years.getLowerBound();
+        var upperBound = years.getUpperBound();
+        if (lowerBound.isBounded() || upperBound.isBounded()) {
+            var year = Criteria.where("year");
+            lowerBound.getValue().ifPresent(from -> {
+                if (lowerBound.isInclusive()) {
+                    year.gte(from);
+                } else {
+                    year.gt(from);
+                }
+            });
+            upperBound.getValue().ifPresent(to -> {
+                if (upperBound.isInclusive()) {
+                    year.lte(to);
+                } else {
+                    year.lt(to);
+                }
+            });
+            query.addCriteria(year);
+        }
+        return find(query, fields);
+    }
+
+    @Override
+    public Flux<YearCount> countByYear() {
+        var aggregation = Aggregation.newAggregation(MovieInfo.class,
+                inYearOrder(),
+                Aggregation.group("year").count().as("count"),
+                Aggregation.project("count").and("year").previousOperation(),
+                Aggregation.sort(Sort.by("year")));
+        return mongoOperations.aggregate(aggregation, YearCount.class);
+    }
+
+    @Override
+    public Flux<DecadeCount> countByDecade() {
+        var aggregation = Aggregation.newAggregation(MovieInfo.class,
+                inYearOrder(),
+                Aggregation.project().andExclude("_id").andExpression("year - year % 10").as("decade"),
+                Aggregation.group("decade").count().as("count"),
+                Aggregation.project("count").and("decade").previousOperation(),
+                Aggregation.sort(Sort.by("decade")));
+        return mongoOperations.aggregate(aggregation, DecadeCount.class);
+    }
+
+    // the pipelines only read the year (not even the _id), sorted on it Mongo answers them from the
+    // year_name index without fetching any document
+    private static AggregationOperation inYearOrder() {
+        return Aggregation.sort(Sort.by("year"));
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertAllUnordered(List<MovieInfo> movieInfos) {
+        if (movieInfos.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        // the same initial version a save would assign
+        movieInfos.forEach(movieInfo -> movieInfo.setVersion(0L));
+        var documents = movieInfos.stream()
+                .map(this::toDocument)
+                .collect(Collectors.toList());
+
+        return mongoOperations.getCollection(mongoOperations.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(insertManyResult -> Map.<Integer, String>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage))))
+                .doOnNext(writeErrors -> {
+                    // the driver adds the generated _id to the documents it inserts
+                    for (int i = 0; i < movieInfos.size(); i++) {
+                        if (!writeErrors.containsKey(i)) {
+                            movieInfos.get(i).setMovieInfoId(idOf(documents.get(i)));
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public Mono<MovieInfo> updateFields(String movieInfoId, Long expectedVersion, Map<String, Object> fields) {
+        var criteria = Criteria.where("movieInfoId").is(movieInfoId);
+        if (expectedVersion != null) {
+            criteria.and("version").is(expectedVersion);
+        }
+        var update = new Update().inc("version", 1);
+        fields.forEach((field, value) -> {
+            if (value == null) {
+                update.unset(field);
+            } else {
+                update.set(field, value);
+            }
+        });
+        return mongoOperations.findAndModify(Query.query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), MovieInfo.class);
+    }
+
+    @Override
+    public Flux<MovieInfo> findByCastMember(String castMember, String afterName, String afterId, int limit,
+                                            Collection<String> fields) {
+        var query = Query.query(Criteria.where("cast").is(castMember))
+                .with(Sort.by("name", "movieInfoId"))
+                .limit(limit);
+        if (afterName != null) {
+            // names are not unique, ties are broken by id
+            var nextNames = Criteria.where("name").gt(afterName);
+            query.addCriteria(afterId == null
+                    ? nextNames
+                    : new Criteria().orOperator(nextNames,
+                    new Criteria().andOperator(Criteria.where("name").is(afterName), afterIdCriteria(afterId))));
+        }
+        return find(query, fields);
+    }
+
+    private Flux<MovieInfo> find(Query query, Collection<String> fields) {
+        return mongoOperations.find(including(query, fields), MovieInfo.class)
+                .map(movieInfo -> projected(movieInfo, fields));
+    }
+
+    // only projected movie infos leave out the fields they were read without
+    private static MovieInfo projected(MovieInfo movieInfo, Collection<String> fields) {
+        return fields == null ? movieInfo : new ProjectedMovieInfo(movieInfo);
+    }
+
+    // a projection leaves the unused fields on the server, _id is always returned
+    private static Query including(Query query, Collection<String> fields) {
+        if (fields != null) {
+            fields.forEach(query.fields()::include);
+        }
+        return query;
+    }
+
+    private Document toDocument(MovieInfo movieInfo) {
+        var document = new Document();
+        mongoOperations.getConverter().write(movieInfo, document);
+        return document;
+    }
+
+    private static String idOf(Document document) {
+        var id = document.get("_id");
+        return id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id);
+    }
+
+    private Criteria afterIdCriteria(String afterId) {
+        if (ObjectId.isValid(afterId)) {
+            return Criteria.where("movieInfoId").gt(new ObjectId(afterId));
+        }
+        // ids are either client supplied strings or generated ObjectIds. $gt only compares values of the
+        // same type, and every ObjectId sorts after every string, so they all come after a string id.
+        return new Criteria().orOperator(
+                Criteria.where("movieInfoId").gt(afterId),
+                Criteria.where("movieInfoId").type(JsonSchemaObject.Type.objectIdType()));
+    }
+}
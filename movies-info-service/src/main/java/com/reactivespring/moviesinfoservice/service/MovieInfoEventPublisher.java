@@ -0,0 +1,120 @@
+package com.reactivespring.moviesinfoservice.service;
+
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.MovieInfoEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Fans the movie info changes out to any number of subscribers through one multicast sink.
+ * <p>
+ * The changes come from the service's own write path, or with {@code movieInfos.events.source=changeStream}
+ * from a Mongo change stream, which also sees writes made by other instances but needs a replica set.
+ * Every subscriber gets its own bounded buffer: a subscriber that falls behind loses its oldest
+ * events instead of holding up the others or growing without bound.
+ */
+@Component
+@Slf4j
+public class MovieInfoEventPublisher {
+
+    public static final String CHANGE_STREAM = "changeStream";
+
+    private final Sinks.Many<MovieInfoEvent> sink = Sinks.many().multicast().directBestEffort();
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Value("${movieInfos.events.source:service}")
+    private String source;
+
+    @Value("${movieInfos.events.subscriberBufferSize:256}")
+    private int subscriberBufferSize;
+
+    private Disposable changeStream;
+
+    public MovieInfoEventPublisher(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public Flux<MovieInfoEvent> events() {
+        return sink.asFlux()
+                .onBackpressureBuffer(subscriberBufferSize,
+                        dropped -> log.debug("Dropping {} event for a slow subscriber : {}", dropped.getType(), dropped.getMovieInfoId()),
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    /**
+     * Called by the write path once a change is stored, ignored when the change stream is the source.
+     */
+    public void publish(MovieInfoEvent event) {
+        if (!CHANGE_STREAM.equals(source)) {
+            emit(event);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void watchChangeStream() {
+        if (!CHANGE_STREAM.equals(source)) {
+            return;
+        }
+        var options = ChangeStreamOptions.builder()
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                .build();
+        changeStream = Flux.defer(() -> mongoTemplate.changeStream(
+                        mongoTemplate.getCollectionName(MovieInfo.class), options, MovieInfo.class))
+                .flatMap(changeStreamEvent -> Mono.justOrEmpty(toEvent(changeStreamEvent)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(retrySignal -> log.warn("Reopening the movie info change stream after : {}",
+                                retrySignal.failure().getMessage())))
+                .subscribe(this::emit);
+    }
+
+    @PreDestroy
+    void stopChangeStream() {
+        if (changeStream != null) {
+            changeStream.dispose();
+        }
+    }
+
+    private MovieInfoEvent toEvent(ChangeStreamEvent<MovieInfo> changeStreamEvent) {
+        var operationType = changeStreamEvent.getOperationType();
+        if (operationType == OperationType.INSERT && changeStreamEvent.getBody() != null) {
+            return MovieInfoEvent.created(changeStreamEvent.getBody());
+        }
+        if ((operationType == OperationType.UPDATE || operationType == OperationType.REPLACE)
+                && changeStreamEvent.getBody() != null) {
+            return MovieInfoEvent.updated(changeStreamEvent.getBody());
+        }
+        if (operationType == OperationType.DELETE && changeStreamEvent.getRaw() != null
+                && changeStreamEvent.getRaw().getDocumentKey() != null) {
+            BsonValue id = changeStreamEvent.getRaw().getDocumentKey().get("_id");
+            return MovieInfoEvent.deleted(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue());
+        }
+        return null;
+    }
+
+    private void emit(MovieInfoEvent event) {
+        // writes complete on several threads, concurrent emissions are retried rather than lost
+        while (sink.tryEmitNext(event) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.reactivespring.moviesinfoservice.service;
+
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.TypeaheadSuggestion;
+import com.reactivespring.moviesinfoservice.repository.MovieInfoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Prefix search over the normalized movie names and cast members, held in memory.
+ * <p>
+ * Every word of a name or cast member starts a key, so "kni" finds "The Dark Knight" and "bal" finds
+ * the movies with Christian Bale. The keys are held in a trie whose every node keeps the best
+ * {@code maxResults} movies below it, a lookup walks down the prefix and answers that node's list.
+ * A change ranks the nodes along the movie's keys again, bottom up, each from the movies whose key
+ * ends there and the lists of its children, and stops at the first node whose list it leaves as it was.
+ * Movies are ranked by popularity, the number of times they were read by id, then by name.
+ * <p>
+ * The index is loaded from Mongo at startup and kept up to date by the service's write path.
+ * Popularity is counted on every read but only applied to the ranking every {@code popularityFlush},
+ * as re-ranking takes the write lock.
+ */
+@Component
+@Slf4j
+public class MovieInfoTypeahead {
+
+    private static final Comparator<Entry> RANKING = Comparator.<Entry>comparingLong(entry -> -entry.popularity)
+            .thenComparing(entry -> entry.name)
+            .thenComparing(entry -> entry.movieInfoId);
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}");
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final MovieInfoRepository movieInfoRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock, as is entries
+    private final Node root = new Node();
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    // movies deleted while the initial load runs, the load must not bring them back
+    private Set<String> deletedWhileLoading = new HashSet<>();
+
+    private final Map<String, LongAdder> pendingViews = new ConcurrentHashMap<>();
+
+    @Value("${movieInfos.typeahead.maxResults:10}")
+    private int maxResults;
+
+    @Value("${movieInfos.typeahead.popularityFlush:30s}")
+    private Duration popularityFlush;
+
+    @Value("${movieInfos.cursorBatchSize:100}")
+    private int cursorBatchSize;
+
+    private Disposable load;
+
+    private Disposable popularityFlushes;
+
+    public MovieInfoTypeahead(MovieInfoRepository movieInfoRepository) {
+        this.movieInfoRepository = movieInfoRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        // a failed load starts over, the movies it already loaded are skipped
+        load = Flux.defer(() -> movieInfoRepository.findAllAfter(null, 0, cursorBatchSize, List.of("name", "year", "cast")))
+                .buffer(cursorBatchSize)
+                .doOnNext(this::load)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(retrySignal -> log.warn("Loading the typeahead index again after : {}",
+                                retrySignal.failure().getMessage())))
+                .then()
+                .subscribe(null, ex -> log.error("Loading the typeahead index failed", ex), () -> {
+                    withWriteLock(() -> deletedWhileLoading = null);
+                    log.info("Loaded {} movie infos into the typeahead index", size());
+                });
+        popularityFlushes = Flux.interval(popularityFlush, Schedulers.boundedElastic())
+                .subscribe(tick -> {
+                    try {
+                        flushPopularity();
+                    } catch (RuntimeException ex) {
+                        // only the views of this flush are lost, the next one goes on
+                        log.error("Applying the typeahead popularity failed", ex);
+                    }
+                });
+    }
+
+    @PreDestroy
+    void stop() {
+        if (load != null) {
+            load.dispose();
+        }
+        if (popularityFlushes != null) {
+            popularityFlushes.dispose();
+        }
+    }
+
+    /**
+     * At most {@code limit} movies, capped at {@code maxResults}, with a name or cast member word starting with the prefix.
+     */
+    public List<TypeaheadSuggestion> suggest(String prefix, int limit) {
+        var key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            var node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            return Arrays.stream(node.top)
+                    .limit(Math.min(limit, maxResults))
+                    .map(entry -> new TypeaheadSuggestion(entry.movieInfoId, entry.name, entry.year))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(MovieInfo movieInfo) {
+        withWriteLock(() -> {
+            var previous = entries.remove(movieInfo.getMovieInfoId());
+            var popularity = 0L;
+            if (previous != null) {
+                removeKeys(previous);
+                popularity = previous.popularity;
+            }
+            addEntry(movieInfo, popularity);
+        });
+    }
+
+    public void remove(String movieInfoId) {
+        withWriteLock(() -> {
+            var previous = entries.remove(movieInfoId);
+            if (previous != null) {
+                removeKeys(previous);
+            }
+            if (deletedWhileLoading != null) {
+                deletedWhileLoading.add(movieInfoId);
+            }
+        });
+    }
+
+    public void recordView(String movieInfoId) {
+        pendingViews.computeIfAbsent(movieInfoId, id -> new LongAdder()).increment();
+    }
+
+    void flushPopularity() {
+        var views = new HashMap<String, Long>();
+        pendingViews.forEach((movieInfoId, count) -> views.put(movieInfoId, count.sumThenReset()));
+        pendingViews.entrySet().removeIf(pending -> pending.getValue().sum() == 0);
+        withWriteLock(() -> views.forEach((movieInfoId, count) -> {
+            var entry = entries.get(movieInfoId);
+            if (entry != null && count > 0) {
+                // the nodes hold the movie in ranking order, so it is taken out before its rank changes
+                removeKeys(entry);
+                entry.popularity += count;
+                addKeys(entry);
+            }
+        }));
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void load(List<MovieInfo> movieInfos) {
+        withWriteLock(() -> movieInfos.forEach(movieInfo -> {
+            // the write path is newer than what the load read
+            if (!entries.containsKey(movieInfo.getMovieInfoId())
+                    && !deletedWhileLoading.contains(movieInfo.getMovieInfoId())) {
+                addEntry(movieInfo, 0);
+            }
+        }));
+    }
+
+    private void addEntry(MovieInfo movieInfo, long popularity) {
+        var entry = new Entry(movieInfo.getMovieInfoId(),
+                movieInfo.getName() == null ? "" : movieInfo.getName(), movieInfo.getYear(),
+                keysOf(movieInfo), popularity);
+        entries.put(entry.movieInfoId, entry);
+        addKeys(entry);
+    }
+
+    private void addKeys(Entry entry) {
+        for (var key : entry.keys) {
+            var path = new ArrayList<Node>(key.length() + 1);
+            var node = root;
+            path.add(node);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), character -> new Node());
+                path.add(node);
+            }
+            node.movies.add(entry);
+            rankUp(path);
+        }
+    }
+
+    private void removeKeys(Entry entry) {
+        for (var key : entry.keys) {
+            var path = new ArrayList<Node>(key.length() + 1);
+            var node = root;
+            path.add(node);
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+                path.add(node);
+            }
+            if (node == null || !node.movies.remove(entry)) {
+                continue;
+            }
+            // the nodes left without movies below them are dropped
+            for (int i = key.length(); i > 0 && path.get(i).isEmpty(); i--) {
+                path.get(i - 1).children.remove(key.charAt(i - 1));
+            }
+            rankUp(path);
+        }
+    }
+
+    private void rankUp(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            if (!path.get(i).rank(maxResults)) {
+                // a node whose list is left as it was changes nothing above it
+                return;
+            }
+        }
+    }
+
+    private void withWriteLock(Runnable update) {
+        lock.writeLock().lock();
+        try {
+            update.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Set<String> keysOf(MovieInfo movieInfo) {
+        var keys = new LinkedHashSet<String>();
+        addWordSuffixes(movieInfo.getName(), keys);
+        if (movieInfo.getCast() != null) {
+            movieInfo.getCast().forEach(castMember -> addWordSuffixes(castMember, keys));
+        }
+        return keys;
+    }
+
+    // "christian bale" is found by "chr" and by "bal"
+    private static void addWordSuffixes(String text, Set<String> keys) {
+        var normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        keys.add(normalized);
+        for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+            keys.add(normalized.substring(i + 1));
+        }
+    }
+
+    /**
+     * Lower case without accents, punctuation or repeated whitespace: "Amélie (2001)" becomes "amelie 2001".
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        var withoutMarks = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(withoutMarks.toLowerCase()).replaceAll(" ").trim();
+    }
+
+    private static final class Node {
+
+        private final Map<Character, Node> children = new HashMap<>();
+
+        // the movies with a key ending here, in ranking order
+        private final TreeSet<Entry> movies = new TreeSet<>(RANKING);
+
+        // the best movies of this node and all the nodes below it
+        private Entry[] top = NO_ENTRIES;
+
+        /**
+         * Ranks the best movies again from this node's and its children's best, answers whether they changed.
+         */
+        private boolean rank(int maxResults) {
+            var candidates = new TreeSet<>(RANKING);
+            movies.stream().limit(maxResults).forEach(candidates::add);
+            children.values().forEach(child -> candidates.addAll(Arrays.asList(child.top)));
+            var ranked = candidates.stream().limit(maxResults).toArray(Entry[]::new);
+            if (Arrays.equals(ranked, top)) {
+                return false;
+            }
+            top = ranked;
+            return true;
+        }
+
+        private boolean isEmpty() {
+            return movies.isEmpty() && children.isEmpty();
+        }
+    }
+
+    private static final class Entry {
+
+        private final String movieInfoId;
+        private final String name;
+        private final Integer year;
+        private final Set<String> keys;
+        private long popularity;
+
+        private Entry(String movieInfoId, String name, Integer year, Set<String> keys, long popularity) {
+            this.movieInfoId = movieInfoId;
+            this.name = name;
+            this.year = year;
+            this.keys = keys;
+            this.popularity = popularity;
+        }
+    }
+}
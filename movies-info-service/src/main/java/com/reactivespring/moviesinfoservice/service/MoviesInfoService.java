@@ -1,49 +1,375 @@
 package com.reactivespring.moviesinfoservice.service;
 
+import com.reactivespring.moviesinfoservice.domain.BulkItemResult;
+import com.reactivespring.moviesinfoservice.domain.DecadeCount;
 import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.MovieInfoEvent;
+import com.reactivespring.moviesinfoservice.domain.TypeaheadSuggestion;
+import com.reactivespring.moviesinfoservice.domain.YearCount;
+import com.reactivespring.moviesinfoservice.exception.MovieInfoConflictException;
+import com.reactivespring.moviesinfoservice.exception.MovieInfoDataException;
 import com.reactivespring.moviesinfoservice.repository.MovieInfoRepository;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import javax.annotation.PostConstruct;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class MoviesInfoService {
 
     private MovieInfoRepository movieInfoRepository;
 
-    public MoviesInfoService(MovieInfoRepository moviInfoRepository) {
+    private Validator validator;
+
+    private MovieInfoEventPublisher eventPublisher;
+
+    private MeterRegistry meterRegistry;
+
+    private MovieInfoTypeahead typeahead;
+
+    private static final Set<String> PROJECTABLE_FIELDS =
+            Set.of("movieInfoId", "name", "year", "cast", "release_date", "version");
+
+    @Value("${movieInfos.page.defaultLimit:100}")
+    private int defaultPageLimit;
+
+    @Value("${movieInfos.page.maxLimit:1000}")
+    private int maxPageLimit;
+
+    @Value("${movieInfos.cursorBatchSize:100}")
+    private int cursorBatchSize;
+
+    @Value("${movieInfos.bulk.batchSize:500}")
+    private int bulkBatchSize;
+
+    @Value("${movieInfos.typeahead.defaultLimit:5}")
+    private int typeaheadDefaultLimit;
+
+    @Value("${movieInfos.cache.maxSize:10000}")
+    private long cacheMaxSize;
+
+    @Value("${movieInfos.cache.ttl:10m}")
+    private Duration cacheTtl;
+
+    @Value("${movieInfos.cache.negativeTtl:5s}")
+    private Duration cacheNegativeTtl;
+
+    @Value("${movieInfos.stats.ttl:30s}")
+    private Duration statsTtl;
+
+    private AsyncLoadingCache<String, Optional<MovieInfo>> movieInfoCache;
+
+    private Mono<List<YearCount>> yearCounts;
+
+    private Mono<List<DecadeCount>> decadeCounts;
+
+    public MoviesInfoService(MovieInfoRepository moviInfoRepository, Validator validator,
+                             MovieInfoEventPublisher eventPublisher, MeterRegistry meterRegistry,
+                             MovieInfoTypeahead typeahead) {
         this.movieInfoRepository = moviInfoRepository;
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.typeahead = typeahead;
+    }
+
+    @PostConstruct
+    void initCache() {
+        // every write through this service invalidates its entry, the ttl only bounds how long writes made
+        // elsewhere stay unseen. Unknown ids are remembered briefly so repeated misses do not all hit Mongo.
+        movieInfoCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new Expiry<String, Optional<MovieInfo>>() {
+                    @Override
+                    public long expireAfterCreate(String id, Optional<MovieInfo> movieInfo, long currentTime) {
+                        return (movieInfo.isPresent() ? cacheTtl : cacheNegativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String id, Optional<MovieInfo> movieInfo, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(id, movieInfo, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String id, Optional<MovieInfo> movieInfo, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync((id, executor) -> movieInfoRepository.findById(id)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .toFuture());
+        CaffeineCacheMetrics.monitor(meterRegistry, movieInfoCache.synchronous(), "movieInfo");
+
+        // dashboards poll the counts, within the ttl they share one aggregation
+        yearCounts = cachedForStatsTtl(Flux.defer(movieInfoRepository::countByYear).collectList());
+        decadeCounts = cachedForStatsTtl(Flux.defer(movieInfoRepository::countByDecade).collectList());
+    }
+
+    // a failed aggregation is not kept, the next subscriber runs it again
+    private <T> Mono<T> cachedForStatsTtl(Mono<T> counts) {
+        return counts.cache(value -> statsTtl, error -> Duration.ZERO, () -> Duration.ZERO);
     }
 
 
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
-       return movieInfoRepository.save(movieInfo);
+       return movieInfoRepository.save(movieInfo)
+               .doOnNext(savedMovieInfo -> {
+                   // a client supplied id may have been cached as unknown
+                   movieInfoCache.synchronous().invalidate(savedMovieInfo.getMovieInfoId());
+                   typeahead.put(savedMovieInfo);
+                   eventPublisher.publish(MovieInfoEvent.created(savedMovieInfo));
+               });
+    }
+
+    /**
+     * Validates and inserts the movie infos batch by batch, emitting one result per movie info in
+     * upload order. Only the batch being written and the next one are held in memory, the upload
+     * is read no faster than the batches are inserted.
+     */
+    public Flux<BulkItemResult> addMovieInfos(Flux<MovieInfo> movieInfos) {
+        return movieInfos
+                .index()
+                .buffer(bulkBatchSize)
+                .concatMap(this::insertBatch, 1);
+    }
+
+    private Flux<BulkItemResult> insertBatch(List<Tuple2<Long, MovieInfo>> batch) {
+        var results = new BulkItemResult[batch.size()];
+        var validPositions = new ArrayList<Integer>();
+        var validMovieInfos = new ArrayList<MovieInfo>();
+        for (int i = 0; i < batch.size(); i++) {
+            var violations = validator.validate(batch.get(i).getT2());
+            if (violations.isEmpty()) {
+                validPositions.add(i);
+                validMovieInfos.add(batch.get(i).getT2());
+            } else {
+                results[i] = BulkItemResult.invalid(batch.get(i).getT1(), violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(",")));
+            }
+        }
+
+        return movieInfoRepository.insertAllUnordered(validMovieInfos)
+                .flatMapMany(writeErrors -> {
+                    for (int i = 0; i < validPositions.size(); i++) {
+                        var position = validPositions.get(i);
+                        var index = batch.get(position).getT1();
+                        var movieInfo = validMovieInfos.get(i);
+                        if (writeErrors.containsKey(i)) {
+                            results[position] = BulkItemResult.failed(index, movieInfo.getMovieInfoId(), writeErrors.get(i));
+                        } else {
+                            results[position] = BulkItemResult.created(index, movieInfo.getMovieInfoId());
+                            movieInfoCache.synchronous().invalidate(movieInfo.getMovieInfoId());
+                            typeahead.put(movieInfo);
+                            eventPublisher.publish(MovieInfoEvent.created(movieInfo));
+                        }
+                    }
+                    return Flux.fromArray(results);
+                });
+    }
+
+    /**
+     * One page of movie infos in id order, the next page starts after the last id of this one.
+     */
+    public Flux<MovieInfo> getAllMovieInfos(String afterId, Integer limit, List<String> fields) {
+        return Flux.defer(() -> movieInfoRepository.findAllAfter(afterId, pageLimit(limit), cursorBatchSize,
+                projection(fields)));
+    }
+
+    private int pageLimit(Integer limit) {
+        return limit == null ? defaultPageLimit : Math.min(Math.max(limit, 1), maxPageLimit);
+    }
+
+    /**
+     * All movie infos in id order. Demand is requested from the cursor one batch at a time,
+     * so a slow consumer holds at most a couple of batches in memory.
+     */
+    public Flux<MovieInfo> streamAllMovieInfos(String afterId, List<String> fields) {
+        return Flux.defer(() -> movieInfoRepository.findAllAfter(afterId, 0, cursorBatchSize, projection(fields)))
+                .limitRate(cursorBatchSize);
     }
 
-    public Flux<MovieInfo> getAllMovieInfos() {
-        return movieInfoRepository.findAll();
+    /**
+     * Whole movie infos are read through the in-process cache, projections always go to Mongo.
+     */
+    public Mono<MovieInfo> getAllMovieInfoById(String id, List<String> fields) {
+        var movieInfo = fields == null || fields.isEmpty()
+                ? Mono.defer(() -> Mono.fromFuture(movieInfoCache.get(id))).flatMap(Mono::<MovieInfo>justOrEmpty)
+                : Mono.defer(() -> movieInfoRepository.findById(id, projection(fields)));
+        // reads by id are what the typeahead ranks by
+        return movieInfo.doOnNext(found -> typeahead.recordView(id));
     }
 
-    public Mono<MovieInfo> getAllMovieInfoById(String id) {
-        return movieInfoRepository.findById(id);
+    /**
+     * The fields to read for a {@code fields} request parameter, null when the whole document is wanted.
+     * Only the fields of {@link MovieInfo} can be requested, the id is always returned.
+     */
+    private static Set<String> projection(List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        var projection = new LinkedHashSet<String>();
+        for (var field : fields) {
+            var trimmed = field.trim();
+            if (!PROJECTABLE_FIELDS.contains(trimmed)) {
+                throw new MovieInfoDataException("Unknown movieInfo field : " + trimmed);
+            }
+            projection.add(trimmed);
+        }
+        return projection;
     }
 
+    /**
+     * Replaces the fields of the movie info in one atomic update. A version in the request makes the
+     * update conditional on it, so a concurrent update is rejected instead of being overwritten.
+     */
     public Mono<MovieInfo> updateMovieInfo(MovieInfo updatedMovieInfo, String id) {
-        return movieInfoRepository.findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setCast(updatedMovieInfo.getCast());
-                    movieInfo.setName(updatedMovieInfo.getName());
-                    movieInfo.setRelease_date(updatedMovieInfo.getRelease_date());
-                    movieInfo.setYear(updatedMovieInfo.getYear());
-                    return movieInfoRepository.save(movieInfo);
-                });
+        var fields = new HashMap<String, Object>();
+        fields.put("name", updatedMovieInfo.getName());
+        fields.put("year", updatedMovieInfo.getYear());
+        fields.put("cast", updatedMovieInfo.getCast());
+        fields.put("release_date", updatedMovieInfo.getRelease_date());
+        return updateFields(id, updatedMovieInfo.getVersion(), fields);
+    }
+
+    /**
+     * Like {@link #updateMovieInfo(MovieInfo, String)}, but only the fields present in the request are changed.
+     */
+    public Mono<MovieInfo> patchMovieInfo(MovieInfo changedMovieInfo, String id) {
+        return Mono.defer(() -> {
+            var changed = new BeanWrapperImpl(changedMovieInfo);
+            var fields = new HashMap<String, Object>();
+            Stream.of("name", "year", "cast", "release_date").forEach(field -> {
+                var value = changed.getPropertyValue(field);
+                if (value != null) {
+                    validateProperty(changedMovieInfo, field);
+                    fields.put(field, value);
+                }
+            });
+            return updateFields(id, changedMovieInfo.getVersion(), fields);
+        });
+    }
+
+    private void validateProperty(MovieInfo movieInfo, String field) {
+        var constraintViolations = validator.validateProperty(movieInfo, field);
+        if (!constraintViolations.isEmpty()) {
+            throw new MovieInfoDataException(constraintViolations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(",")));
+        }
+    }
+
+    private Mono<MovieInfo> updateFields(String id, Long expectedVersion, Map<String, Object> fields) {
+        return movieInfoRepository.updateFields(id, expectedVersion, fields)
+                .doOnNext(updatedMovieInfo -> {
+                    movieInfoCache.synchronous().invalidate(id);
+                    typeahead.put(updatedMovieInfo);
+                    eventPublisher.publish(MovieInfoEvent.updated(updatedMovieInfo));
+                })
+                // nothing matched: either there is no such movie info or its version has moved on
+                .switchIfEmpty(Mono.defer(() -> expectedVersion == null
+                        ? Mono.empty()
+                        : movieInfoRepository.existsById(id)
+                        .flatMap(exists -> exists
+                                ? Mono.error(new MovieInfoConflictException("MovieInfo " + id
+                                + " was modified concurrently, expected version : " + expectedVersion))
+                                : Mono.empty())));
     }
 
     public Mono<Void> deleteMovieInfo(String id) {
-        return movieInfoRepository.deleteById(id);
+        return movieInfoRepository.deleteById(id)
+                .then(Mono.fromRunnable(() -> {
+                    movieInfoCache.synchronous().invalidate(id);
+                    typeahead.remove(id);
+                    eventPublisher.publish(MovieInfoEvent.deleted(id));
+                }));
+    }
+
+    public Flux<MovieInfo> getMovieInfoByYear(Integer year, List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return movieInfoRepository.findByYear(year);
+        }
+        return getMovieInfosByYearRange(year, year, fields);
+    }
+
+    /**
+     * Movie infos released between the given years, both inclusive and both optional, in name order.
+     * The range is read from the (year, name) index; as it spans several years the name order
+     * still needs a sort of the matched entries.
+     */
+    public Flux<MovieInfo> getMovieInfosByYearRange(Integer yearFrom, Integer yearTo, List<String> fields) {
+        var years = Range.of(
+                yearFrom == null ? Range.Bound.<Integer>unbounded() : Range.Bound.inclusive(yearFrom),
+                yearTo == null ? Range.Bound.<Integer>unbounded() : Range.Bound.inclusive(yearTo));
+        return Flux.defer(() -> movieInfoRepository.findByYearBetween(years, Sort.by("name"), projection(fields)));
+    }
+
+    /**
+     * Live changes to the movie infos from now on, see {@link MovieInfoEventPublisher}.
+     */
+    public Flux<MovieInfoEvent> streamMovieInfoEvents() {
+        return eventPublisher.events();
+    }
+
+    /**
+     * One page of the movie infos with the cast member in name order, the next page starts after the
+     * name and id of the last movie info of this one.
+     */
+    public Flux<MovieInfo> getMovieInfosByCast(String castMember, String afterName, String afterId, Integer limit,
+                                               List<String> fields) {
+        return Flux.defer(() -> movieInfoRepository.findByCastMember(castMember, afterName, afterId,
+                pageLimit(limit), projection(fields)));
+    }
+
+    /**
+     * The number of movie infos per year, at most {@code movieInfos.stats.ttl} old.
+     */
+    public Flux<YearCount> getMovieInfoCountsByYear() {
+        return yearCounts.flatMapIterable(Function.identity());
+    }
+
+    /**
+     * The number of movie infos per decade, at most {@code movieInfos.stats.ttl} old.
+     */
+    public Flux<DecadeCount> getMovieInfoCountsByDecade() {
+        return decadeCounts.flatMapIterable(Function.identity());
+    }
+
+    public List<TypeaheadSuggestion> suggestMovieInfos(String prefix, Integer limit) {
+        return typeahead.suggest(prefix, limit == null ? typeaheadDefaultLimit : limit);
     }
 
-    public Flux<MovieInfo> getMovieInfoByYear(Integer year) {
-        return movieInfoRepository.findByYear(year);
+    public Flux<MovieInfo> getMovieInfosByIds(List<String> ids, List<String> fields) {
+        return Flux.defer(() -> movieInfoRepository.findAllById(ids, projection(fields)));
     }
 }
@@ -1,6 +1,8 @@
 package com.reactivespring.moviesinfoservice.controller;
 
+import com.reactivespring.moviesinfoservice.domain.BulkItemResult;
 import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.MovieInfoEvent;
 import com.reactivespring.moviesinfoservice.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,9 +10,13 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.test.StepVerifier;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -68,6 +74,74 @@ class MoviesInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void addMovieInfos() {
+
+        var body = "{\"name\":\"Batman Begins1\",\"year\":2005,\"cast\":[\"Christian Bale\"]}\n" +
+                "{\"name\":\"\",\"year\":-2005,\"cast\":[\"Christian Bale\"]}\n" +
+                "{\"movieInfoId\":\"abc\",\"name\":\"Dark Knight Rises\",\"year\":2012,\"cast\":[\"Tom Hardy\"]}\n";
+
+        var results = webTestClient.post()
+                .uri(V_1_MOVIESINFO + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(BulkItemResult.class)
+                .getResponseBody();
+
+        StepVerifier.create(results)
+                .assertNext(result -> {
+                    assertEquals(BulkItemResult.Status.CREATED, result.getStatus());
+                    assertNotNull(result.getMovieInfoId());
+                })
+                .assertNext(result -> {
+                    assertEquals(BulkItemResult.Status.INVALID, result.getStatus());
+                    assertEquals("movieInfo.name must be present,movieInfo.year must be positive", result.getError());
+                })
+                .assertNext(result -> {
+                    // abc already exists
+                    assertEquals(BulkItemResult.Status.FAILED, result.getStatus());
+                    assertEquals("abc", result.getMovieInfoId());
+                })
+                .verifyComplete();
+
+        StepVerifier.create(movieInfoRepository.findAll())
+                .expectNextCount(4)
+                .verifyComplete();
+    }
+
+    @Test
+    void streamMovieInfoEvents() {
+
+        var moviesInfo = new MovieInfo(null, "Batman Begins1",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        var events = webTestClient.get()
+                .uri(V_1_MOVIESINFO + "/stream")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .then(() -> webTestClient.post()
+                        .uri(V_1_MOVIESINFO)
+                        .bodyValue(moviesInfo)
+                        .exchange()
+                        .expectStatus()
+                        .isCreated())
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.CREATED, event.getType());
+                    assertEquals("Batman Begins1", event.getMovieInfo().getName());
+                })
+                .thenCancel()
+                .verify();
+    }
+
     @Test
     void getAllMoviesInfos() {
         webTestClient.get()
@@ -112,6 +186,29 @@ class MoviesInfoControllerIntgTest {
 //                });
     }
 
+    @Test
+    void getAllMoviesInfoById_fields() {
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "/{id}?fields=name", "abc")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.movieInfoId").isEqualTo("abc")
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$.year").doesNotExist()
+                .jsonPath("$.cast").doesNotExist();
+    }
+
+    @Test
+    void getAllMoviesInfoById_unknownField() {
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "/{id}?fields=name,budget", "abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void getAllMoviesInfoById_notfound() {
         var movieInfoId = "bvv";
@@ -158,6 +255,61 @@ class MoviesInfoControllerIntgTest {
 
     }
 
+    @Test
+    void updateMovieInfo_versionConflict() {
+
+        var moviesInfo = new MovieInfo(null, "Dark  Knight Rises1",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        moviesInfo.setVersion(0L);
+
+        webTestClient.put()
+                .uri(V_1_MOVIESINFO + "/{id}", "abc")
+                .bodyValue(moviesInfo)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        // the same version again, it has been incremented by the first update
+        webTestClient.put()
+                .uri(V_1_MOVIESINFO + "/{id}", "abc")
+                .bodyValue(moviesInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void patchMovieInfo() {
+
+        webTestClient.patch()
+                .uri(V_1_MOVIESINFO + "/{id}", "abc")
+                .bodyValue("{\"year\":2013}")
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var patchedMovieInfo = movieInfoEntityExchangeResult.getResponseBody();
+                    assert patchedMovieInfo != null;
+                    assertEquals(2013, patchedMovieInfo.getYear());
+                    assertEquals("Dark Knight Rises", patchedMovieInfo.getName());
+                    assertEquals(1L, patchedMovieInfo.getVersion());
+                });
+    }
+
+    @Test
+    void patchMovieInfo_notfound() {
+
+        webTestClient.patch()
+                .uri(V_1_MOVIESINFO + "/{id}", "bvv")
+                .bodyValue("{\"year\":2013}")
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @Test
     void deleteMovieInfo() {
 
@@ -1,17 +1,23 @@
 package com.reactivespring.moviesinfoservice.repository;
 
+import com.reactivespring.moviesinfoservice.domain.DecadeCount;
 import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.YearCount;
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import reactor.test.StepVerifier;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @DataMongoTest
 @ActiveProfiles("test")
@@ -48,6 +54,35 @@ class MoviInfoRepositoryIntgTest {
                 .verifyComplete();
     }
 
+    @Test
+    void findAllAfter() {
+
+        var firstPage = movieInfoRepository.findAllAfter(null, 2, 100, null)
+                .collectList()
+                .block();
+
+        assertNotNull(firstPage);
+        assertEquals(2, firstPage.size());
+        // string ids sort before generated ObjectIds
+        assertEquals("abc", firstPage.get(0).getMovieInfoId());
+
+        var secondPage = movieInfoRepository.findAllAfter(firstPage.get(1).getMovieInfoId(), 2, 100, null);
+
+        StepVerifier.create(secondPage)
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void findAllAfter_stringId() {
+
+        var moviesInfo = movieInfoRepository.findAllAfter("abc", 0, 1, null);
+
+        StepVerifier.create(moviesInfo)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
     @Test
     void findById() {
 
@@ -92,6 +127,29 @@ class MoviInfoRepositoryIntgTest {
                 .verifyComplete();
     }
 
+    @Test
+    void updateFields() {
+
+        var updatedMovieInfo = movieInfoRepository.updateFields("abc", 0L, Map.of("year", 2021));
+
+        StepVerifier.create(updatedMovieInfo)
+                .assertNext(movieInfo -> {
+                    assertEquals(2021, movieInfo.getYear());
+                    assertEquals("Dark Knight Rises", movieInfo.getName());
+                    assertEquals(1L, movieInfo.getVersion());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void updateFields_staleVersion() {
+
+        var updatedMovieInfo = movieInfoRepository.updateFields("abc", 5L, Map.of("year", 2021));
+
+        StepVerifier.create(updatedMovieInfo)
+                .verifyComplete();
+    }
+
     @Test
     void deleteMovieInfo() {
 
@@ -114,6 +172,93 @@ class MoviInfoRepositoryIntgTest {
                 .verifyComplete();
     }
 
+    @Test
+    void findByYearBetween() {
+
+        var moviesInfo = movieInfoRepository.findByYearBetween(Range.closed(2005, 2008), Sort.by("name"));
+
+        StepVerifier.create(moviesInfo)
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .assertNext(movieInfo -> assertEquals("The Dark Knight", movieInfo.getName()))
+                .verifyComplete();
+    }
+
+    @Test
+    void findById_fields() {
+
+        var moviesInfo = movieInfoRepository.findById("abc", List.of("name"));
+
+        StepVerifier.create(moviesInfo)
+                .assertNext(movieInfo -> {
+                    assertEquals("abc", movieInfo.getMovieInfoId());
+                    assertEquals("Dark Knight Rises", movieInfo.getName());
+                    assertNull(movieInfo.getYear());
+                    assertNull(movieInfo.getCast());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void findByYearBetween_fields() {
+
+        var moviesInfo = movieInfoRepository.findByYearBetween(Range.closed(2005, 2008), Sort.by("name"), List.of("year"));
+
+        StepVerifier.create(moviesInfo)
+                .assertNext(movieInfo -> {
+                    assertEquals(2005, movieInfo.getYear());
+                    assertNull(movieInfo.getName());
+                })
+                .assertNext(movieInfo -> assertEquals(2008, movieInfo.getYear()))
+                .verifyComplete();
+    }
+
+    @Test
+    void findByCastMember() {
+
+        var firstPage = movieInfoRepository.findByCastMember("Christian Bale", null, null, 2, null)
+                .collectList()
+                .block();
+
+        assertEquals(List.of("Batman Begins", "Dark Knight Rises"),
+                firstPage.stream().map(MovieInfo::getName).collect(Collectors.toList()));
+
+        var lastOfPage = firstPage.get(1);
+        var secondPage = movieInfoRepository.findByCastMember("Christian Bale",
+                lastOfPage.getName(), lastOfPage.getMovieInfoId(), 2, null);
+
+        StepVerifier.create(secondPage)
+                .assertNext(movieInfo -> assertEquals("The Dark Knight", movieInfo.getName()))
+                .verifyComplete();
+    }
+
+    @Test
+    void findByCastMember_otherCastMember() {
+
+        var moviesInfo = movieInfoRepository.findByCastMember("Tom Hardy", null, null, 10, null);
+
+        StepVerifier.create(moviesInfo)
+                .assertNext(movieInfo -> assertEquals("abc", movieInfo.getMovieInfoId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void countByYear() {
+
+        movieInfoRepository.save(new MovieInfo(null, "The Prestige", 2005, List.of("Christian Bale"), null)).block();
+
+        StepVerifier.create(movieInfoRepository.countByYear())
+                .expectNext(new YearCount(2005, 2), new YearCount(2008, 1), new YearCount(2012, 1))
+                .verifyComplete();
+    }
+
+    @Test
+    void countByDecade() {
+
+        StepVerifier.create(movieInfoRepository.countByDecade())
+                .expectNext(new DecadeCount(2000, 2), new DecadeCount(2010, 1))
+                .verifyComplete();
+    }
+
     @Test
     void findByName() {
 
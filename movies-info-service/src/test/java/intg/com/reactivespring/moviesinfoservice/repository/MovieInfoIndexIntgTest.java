@@ -0,0 +1,108 @@
+package com.reactivespring.moviesinfoservice.repository;
+
+import com.reactivespring.moviesinfoservice.config.MongoIndexInitializer;
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataMongoTest
+@ActiveProfiles("test")
+@Import(MongoIndexInitializer.class)
+class MovieInfoIndexIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    MongoIndexInitializer mongoIndexInitializer;
+
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoIndexInitializer.ensureIndexes(MovieInfo.class).block();
+
+        var movieinfos = List.of(new MovieInfo(null, "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo(null, "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
+                new MovieInfo("abc", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+
+        movieInfoRepository.saveAll(movieinfos)
+                .blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void findByYear_usesIndex() {
+
+        var winningPlan = winningPlan(new Document("year", 2005), new Document("name", 1));
+
+        assertTrue(winningPlan.contains("IXSCAN"), winningPlan);
+        assertFalse(winningPlan.contains("COLLSCAN"), winningPlan);
+    }
+
+    @Test
+    void findByYearRange_usesIndex() {
+
+        var winningPlan = winningPlan(new Document("year", new Document("$gte", 2005).append("$lte", 2010)),
+                new Document("name", 1));
+
+        assertTrue(winningPlan.contains("IXSCAN"), winningPlan);
+        assertFalse(winningPlan.contains("COLLSCAN"), winningPlan);
+    }
+
+    @Test
+    void findByCastMember_usesIndex() {
+
+        var winningPlan = winningPlan(new Document("cast", "Christian Bale")
+                        .append("name", new Document("$gt", "Batman Begins")),
+                new Document("name", 1).append("_id", 1));
+
+        assertTrue(winningPlan.contains("cast_name_id"), winningPlan);
+        assertFalse(winningPlan.contains("COLLSCAN"), winningPlan);
+        // the index already returns the page order
+        assertFalse(winningPlan.contains("\"SORT\""), winningPlan);
+    }
+
+    @Test
+    void countByYear_readsTheIndexOnly() {
+
+        var pipeline = List.of(new Document("$sort", new Document("year", 1)),
+                new Document("$group", new Document("_id", "$year").append("count", new Document("$sum", 1))));
+        var explain = mongoTemplate.getCollection(mongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.aggregate(pipeline).explain()))
+                .map(Document::toJson)
+                .block();
+
+        assertTrue(explain.contains("year_name"), explain);
+        assertFalse(explain.contains("COLLSCAN"), explain);
+        assertFalse(explain.contains("\"FETCH\""), explain);
+    }
+
+    private String winningPlan(Document filter, Document sort) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.find(filter).sort(sort).explain()))
+                .map(explain -> explain.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson())
+                .block();
+    }
+}
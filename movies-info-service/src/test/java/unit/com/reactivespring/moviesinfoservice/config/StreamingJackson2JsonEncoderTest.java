@@ -0,0 +1,95 @@
+package com.reactivespring.moviesinfoservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingJackson2JsonEncoderTest {
+
+    private final StreamingJackson2JsonEncoder encoder =
+            new StreamingJackson2JsonEncoder(new ObjectMapper().registerModule(new JavaTimeModule()));
+
+    private final ResolvableType movieInfoType = ResolvableType.forClass(MovieInfo.class);
+
+    @Test
+    void encodesAnArrayElementByElement() {
+
+        var movieInfos = Sinks.many().unicast().<MovieInfo>onBackpressureBuffer();
+
+        var encoded = encoder.encode(movieInfos.asFlux(), DefaultDataBufferFactory.sharedInstance,
+                        movieInfoType, MediaType.APPLICATION_JSON, null)
+                .map(StreamingJackson2JsonEncoderTest::asString);
+
+        StepVerifier.create(encoded)
+                .then(() -> movieInfos.tryEmitNext(new MovieInfo("abc", "Batman Begins", 2005, null, null)))
+                // written before the next movie info is even available
+                .expectNext("[", "{\"movieInfoId\":\"abc\",\"name\":\"Batman Begins\",\"year\":2005,"
+                        + "\"cast\":null,\"release_date\":null,\"version\":null}")
+                .then(() -> movieInfos.tryEmitNext(new MovieInfo("def", "The Dark Knight", 2008, null, null)))
+                .expectNext(",", "{\"movieInfoId\":\"def\",\"name\":\"The Dark Knight\",\"year\":2008,"
+                        + "\"cast\":null,\"release_date\":null,\"version\":null}")
+                .then(movieInfos::tryEmitComplete)
+                .expectNext("]")
+                .verifyComplete();
+    }
+
+    @Test
+    void encodesAnEmptyArray() {
+
+        var encoded = encoder.encode(Flux.empty(), DefaultDataBufferFactory.sharedInstance,
+                        movieInfoType, MediaType.APPLICATION_JSON, null)
+                .map(StreamingJackson2JsonEncoderTest::asString);
+
+        StepVerifier.create(encoded.reduce(String::concat))
+                .expectNext("[]")
+                .verifyComplete();
+    }
+
+    @Test
+    void writesNothingBeforeAnErrorAsTheFirstSignal() {
+
+        var encoded = encoder.encode(Flux.error(new IllegalStateException("boom")), DefaultDataBufferFactory.sharedInstance,
+                        movieInfoType, MediaType.APPLICATION_JSON, null)
+                .map(StreamingJackson2JsonEncoderTest::asString);
+
+        // no bytes go out, so the response status is still open for the error handler
+        StepVerifier.create(encoded)
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    @Test
+    void keepsNdjsonAsIs() {
+
+        var movieInfos = List.of(new MovieInfo("abc", "Batman Begins", 2005, null, null),
+                new MovieInfo("def", "The Dark Knight", 2008, null, null));
+
+        var encoded = encoder.encode(Flux.fromIterable(movieInfos), DefaultDataBufferFactory.sharedInstance,
+                        movieInfoType, MediaType.APPLICATION_NDJSON, null)
+                .map(StreamingJackson2JsonEncoderTest::asString);
+
+        StepVerifier.create(encoded.reduce(String::concat))
+                .assertNext(ndjson -> assertEquals(2, ndjson.split("\n").length))
+                .verifyComplete();
+    }
+
+    private static String asString(DataBuffer dataBuffer) {
+        var value = dataBuffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(dataBuffer);
+        return value;
+    }
+}
@@ -1,6 +1,16 @@
 package com.reactivespring.moviesinfoservice.controller;
 
+import com.reactivespring.moviesinfoservice.config.CodecConfig;
+import com.reactivespring.moviesinfoservice.domain.BulkItemResult;
+import com.reactivespring.moviesinfoservice.domain.DecadeCount;
 import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.MovieInfoEvent;
+import com.reactivespring.moviesinfoservice.domain.ProjectedMovieInfo;
+import com.reactivespring.moviesinfoservice.domain.TypeaheadSuggestion;
+import com.reactivespring.moviesinfoservice.domain.YearCount;
+import com.reactivespring.moviesinfoservice.exception.MovieInfoConflictException;
+import com.reactivespring.moviesinfoservice.exception.MovieInfoDataException;
+import com.reactivespring.moviesinfoservice.filter.RequestTimeoutWebFilter;
 import com.reactivespring.moviesinfoservice.service.MoviesInfoService;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
@@ -8,19 +18,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(controllers = MoviesInfoController.class)
+@Import(CodecConfig.class)
 @AutoConfigureWebTestClient
 public class MovieInfoControllerUnitTest {
 
@@ -44,7 +61,7 @@ public class MovieInfoControllerUnitTest {
                         2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
 
 
-        when(moviesInfoService.getAllMovieInfos()).thenReturn(Flux.fromIterable(movieinfos));
+        when(moviesInfoService.getAllMovieInfos(null, null, null)).thenReturn(Flux.fromIterable(movieinfos));
 
         webTestClient.get()
                 .uri(V_1_MOVIESINFO)
@@ -55,13 +72,266 @@ public class MovieInfoControllerUnitTest {
                 .hasSize(3);
     }
 
+    @Test
+    void getAllMovieInfo_page() {
+
+        var movieinfos = List.of(new MovieInfo("def", "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
+                new MovieInfo("ghi", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+
+        when(moviesInfoService.getAllMovieInfos("abc", 2, null)).thenReturn(Flux.fromIterable(movieinfos));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "?after=abc&limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getAllMovieInfo_fields() {
+
+        var movieinfos = List.<MovieInfo>of(
+                new ProjectedMovieInfo(new MovieInfo("abc", "Batman Begins", 2005, null, null)),
+                new ProjectedMovieInfo(new MovieInfo("def", "The Dark Knight", 2008, null, null)));
+
+        when(moviesInfoService.getAllMovieInfos(null, null, List.of("name", "year"))).thenReturn(Flux.fromIterable(movieinfos));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "?fields=name,year")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].name").isEqualTo("Batman Begins")
+                .jsonPath("$[0].cast").doesNotExist()
+                .jsonPath("$[0].release_date").doesNotExist();
+    }
+
+    @Test
+    void getAllMovieInfo_withoutFieldsWritesNulls() {
+
+        var movieinfos = List.of(new MovieInfo("abc", "Batman Begins", 2005, null, null));
+
+        when(moviesInfoService.getAllMovieInfos(null, null, null)).thenReturn(Flux.fromIterable(movieinfos));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(String.class)
+                .value(body -> assertTrue(body.contains("\"cast\":null"), body));
+    }
+
+    @Test
+    void getAllMovieInfo_unknownField() {
+
+        when(moviesInfoService.getAllMovieInfos(null, null, List.of("bogus")))
+                .thenReturn(Flux.error(new MovieInfoDataException("Unknown movieInfo field : bogus")));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "?fields=bogus")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("Unknown movieInfo field : bogus");
+    }
+
+    @Test
+    void getMovieInfosByYearRange() {
+
+        var movieinfos = List.of(new MovieInfo("abc", "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("def", "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+
+        when(moviesInfoService.getMovieInfosByYearRange(2005, 2010, null)).thenReturn(Flux.fromIterable(movieinfos));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "?yearFrom=2005&yearTo=2010")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getMovieInfosByCast() {
+
+        var movieinfos = List.of(new MovieInfo("ghi", "The Dark Knight",
+                2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+
+        when(moviesInfoService.getMovieInfosByCast("Christian Bale", "Dark Knight Rises", "abc", 1, null))
+                .thenReturn(Flux.fromIterable(movieinfos));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "?cast={cast}&afterName={afterName}&after=abc&limit=1",
+                        "Christian Bale", "Dark Knight Rises")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void streamAllMovieInfo() {
+
+        var movieinfos = List.of(new MovieInfo("abc", "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("def", "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+
+        when(moviesInfoService.streamAllMovieInfos(null, null)).thenReturn(Flux.fromIterable(movieinfos));
+
+        var movieInfoFlux = webTestClient.get()
+                .uri(V_1_MOVIESINFO)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .returnResult(MovieInfo.class)
+                .getResponseBody();
+
+        StepVerifier.create(movieInfoFlux)
+                .assertNext(movieInfo -> assertEquals("abc", movieInfo.getMovieInfoId()))
+                .assertNext(movieInfo -> assertEquals("def", movieInfo.getMovieInfoId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void streamMovieInfoEvents() {
+
+        var movieInfo = new MovieInfo("abc", "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        when(moviesInfoService.streamMovieInfoEvents())
+                .thenReturn(Flux.just(MovieInfoEvent.created(movieInfo), MovieInfoEvent.deleted("abc")));
+
+        var events = webTestClient.get()
+                .uri(V_1_MOVIESINFO + "/stream")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.CREATED, event.getType());
+                    assertEquals("Batman Begins", event.getMovieInfo().getName());
+                })
+                .assertNext(event -> assertEquals(MovieInfoEvent.Type.DELETED, event.getType()))
+                .verifyComplete();
+    }
+
+    @Test
+    void addMovieInfos() {
+
+        when(moviesInfoService.addMovieInfos(isA(Flux.class))).thenAnswer(invocation -> invocation.<Flux<MovieInfo>>getArgument(0)
+                .index()
+                .map(indexed -> BulkItemResult.created(indexed.getT1(), indexed.getT2().getName())));
+
+        var results = webTestClient.post()
+                .uri(V_1_MOVIESINFO + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"name\":\"Batman Begins\",\"year\":2005}\n{\"name\":\"The Dark Knight\",\"year\":2008}\n")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(BulkItemResult.class)
+                .getResponseBody();
+
+        StepVerifier.create(results)
+                .assertNext(result -> assertEquals(0, result.getIndex()))
+                .assertNext(result -> assertEquals("The Dark Knight", result.getMovieInfoId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void getMovieInfosByIds() {
+
+        var movieinfos = List.of(new MovieInfo("abc", "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("def", "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+
+        when(moviesInfoService.getMovieInfosByIds(List.of("abc", "def"), null)).thenReturn(Flux.fromIterable(movieinfos));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "?ids=abc,def")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void suggestMovieInfos() {
+
+        when(moviesInfoService.suggestMovieInfos("dark", null))
+                .thenReturn(List.of(new TypeaheadSuggestion("abc", "Dark Knight Rises", 2012)));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "/typeahead?q=dark")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].movieInfoId").isEqualTo("abc")
+                .jsonPath("$[0].name").isEqualTo("Dark Knight Rises");
+    }
+
+    @Test
+    void getMovieInfoCountsByYear() {
+
+        when(moviesInfoService.getMovieInfoCountsByYear())
+                .thenReturn(Flux.just(new YearCount(2005, 1), new YearCount(2008, 2)));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "/stats/by-year")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[1].year").isEqualTo(2008)
+                .jsonPath("$[1].count").isEqualTo(2);
+    }
+
+    @Test
+    void getMovieInfoCountsByDecade() {
+
+        when(moviesInfoService.getMovieInfoCountsByDecade()).thenReturn(Flux.just(new DecadeCount(2000, 3)));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "/stats/by-decade")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].decade").isEqualTo(2000)
+                .jsonPath("$[0].count").isEqualTo(3);
+    }
+
     @Test
     void getMovieInfoById() {
 
         var movieInfo = new MovieInfo(null, "Batman Begins",
                 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
 
-        when(moviesInfoService.getAllMovieInfoById(anyString())).thenReturn(Mono.just(movieInfo));
+        when(moviesInfoService.getAllMovieInfoById(anyString(), isNull())).thenReturn(Mono.just(movieInfo));
 
         webTestClient.get()
                 .uri(V_1_MOVIESINFO + "/{id}", "abc")
@@ -76,6 +346,23 @@ public class MovieInfoControllerUnitTest {
     }
 
 
+    @Test
+    void getMovieInfoById_exceedsRequestTimeout() {
+
+        var movieInfo = new MovieInfo(null, "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        when(moviesInfoService.getAllMovieInfoById(anyString(), isNull()))
+                .thenReturn(Mono.just(movieInfo).delayElement(Duration.ofSeconds(2)));
+
+        webTestClient.get()
+                .uri(V_1_MOVIESINFO + "/{id}", "abc")
+                .header(RequestTimeoutWebFilter.REQUEST_TIMEOUT_HEADER, "100")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+    }
+
     @Test
     void addMovieInfo() {
 
@@ -151,6 +438,47 @@ public class MovieInfoControllerUnitTest {
                 });
     }
 
+    @Test
+    void patchMovieInfo() {
+
+        when(moviesInfoService.patchMovieInfo(isA(MovieInfo.class), anyString())).thenReturn(
+                Mono.just(new MovieInfo("abc", "Dark Knight Rises",
+                        2013, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 1L))
+        );
+
+        webTestClient.patch()
+                .uri(V_1_MOVIESINFO + "/{id}", "abc")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"year\":2013}")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var patchedMovieInfo = movieInfoEntityExchangeResult.getResponseBody();
+                    assert patchedMovieInfo != null;
+                    assertEquals(2013, patchedMovieInfo.getYear());
+                    assertEquals(1L, patchedMovieInfo.getVersion());
+                });
+    }
+
+    @Test
+    void updateMovieInfo_versionConflict() {
+
+        var moviesInfo = new MovieInfo(null, "Dark  Knight Rises1",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"), 0L);
+
+        when(moviesInfoService.updateMovieInfo(isA(MovieInfo.class), anyString()))
+                .thenReturn(Mono.error(new MovieInfoConflictException("MovieInfo abc was modified concurrently")));
+
+        webTestClient.put()
+                .uri(V_1_MOVIESINFO + "/{id}", "abc")
+                .bodyValue(moviesInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
 
     @Test
     void deleteMovieInfo() {
@@ -0,0 +1,62 @@
+package com.reactivespring.moviesinfoservice.service;
+
+import com.reactivespring.moviesinfoservice.domain.MovieInfoEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieInfoEventPublisherTest {
+
+    private final MovieInfoEventPublisher eventPublisher = new MovieInfoEventPublisher(null);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(eventPublisher, "source", "service");
+        ReflectionTestUtils.setField(eventPublisher, "subscriberBufferSize", 2);
+    }
+
+    @Test
+    void everySubscriberGetsTheEvents() {
+
+        var first = eventPublisher.events().take(1);
+        var second = eventPublisher.events().take(1);
+
+        StepVerifier.create(first.mergeWith(second))
+                .then(() -> eventPublisher.publish(MovieInfoEvent.deleted("abc")))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void slowSubscriberLosesTheOldestEvents() {
+
+        StepVerifier.create(eventPublisher.events(), 0)
+                .then(() -> {
+                    eventPublisher.publish(MovieInfoEvent.deleted("1"));
+                    eventPublisher.publish(MovieInfoEvent.deleted("2"));
+                    eventPublisher.publish(MovieInfoEvent.deleted("3"));
+                })
+                .thenRequest(2)
+                .assertNext(event -> assertEquals("2", event.getMovieInfoId()))
+                .assertNext(event -> assertEquals("3", event.getMovieInfoId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void changeStreamSourceIgnoresTheWritePath() {
+
+        ReflectionTestUtils.setField(eventPublisher, "source", MovieInfoEventPublisher.CHANGE_STREAM);
+
+        StepVerifier.create(eventPublisher.events())
+                .then(() -> eventPublisher.publish(MovieInfoEvent.deleted("abc")))
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify();
+    }
+}
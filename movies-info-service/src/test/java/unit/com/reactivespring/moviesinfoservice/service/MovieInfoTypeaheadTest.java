@@ -0,0 +1,203 @@
+package com.reactivespring.moviesinfoservice.service;
+
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.TypeaheadSuggestion;
+import com.reactivespring.moviesinfoservice.repository.MovieInfoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MovieInfoTypeaheadTest {
+
+    private final MovieInfoTypeahead typeahead = new MovieInfoTypeahead(null);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(typeahead, "maxResults", 10);
+        typeahead.put(new MovieInfo("1", "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+        typeahead.put(new MovieInfo("2", "The Dark Knight",
+                2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+        typeahead.put(new MovieInfo("3", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+    }
+
+    @Test
+    void suggestByNamePrefix() {
+
+        assertEquals(List.of("Dark Knight Rises", "The Dark Knight"), names(typeahead.suggest("dark", 5)));
+        assertEquals(List.of("Dark Knight Rises", "The Dark Knight"), names(typeahead.suggest("Kni", 5)));
+        assertEquals(List.of("Batman Begins"), names(typeahead.suggest("batman b", 5)));
+        assertTrue(typeahead.suggest("knight x", 5).isEmpty());
+    }
+
+    @Test
+    void suggestByCastMemberPrefix() {
+
+        assertEquals(List.of("Dark Knight Rises"), names(typeahead.suggest("hard", 5)));
+        assertEquals(3, typeahead.suggest("bale", 5).size());
+    }
+
+    @Test
+    void suggestIgnoresCaseAccentsAndPunctuation() {
+
+        typeahead.put(new MovieInfo("4", "Amélie", 2001, List.of("Audrey Tautou"), null));
+
+        assertEquals(List.of("Amélie"), names(typeahead.suggest("  AME", 5)));
+        assertEquals("amelie 2001", MovieInfoTypeahead.normalize("Amélie (2001)"));
+    }
+
+    @Test
+    void suggestMostPopularFirst() {
+
+        typeahead.recordView("2");
+        typeahead.recordView("2");
+        typeahead.recordView("3");
+        typeahead.flushPopularity();
+
+        assertEquals(List.of("The Dark Knight", "Dark Knight Rises", "Batman Begins"), names(typeahead.suggest("christian", 5)));
+        assertEquals(List.of("The Dark Knight"), names(typeahead.suggest("c", 1)));
+    }
+
+    @Test
+    void putReplacesTheKeysOfAMovie() {
+
+        typeahead.put(new MovieInfo("2", "The Dark Knight Returns", 2008, List.of(), null));
+
+        assertEquals(List.of("The Dark Knight Returns"), names(typeahead.suggest("returns", 5)));
+        assertEquals(List.of("Batman Begins", "Dark Knight Rises"), names(typeahead.suggest("bale", 5)));
+    }
+
+    @Test
+    void removeDropsAMovie() {
+
+        typeahead.remove("3");
+
+        assertEquals(List.of("The Dark Knight"), names(typeahead.suggest("dark", 5)));
+        assertTrue(typeahead.suggest("tom", 5).isEmpty());
+        assertEquals(2, typeahead.size());
+    }
+
+    @Test
+    void suggestKeepsTheRankingUpToDate() {
+
+        typeahead.put(new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), null));
+        typeahead.put(new MovieInfo("2", "The Dark Knight", 2008, List.of("Christian Bale"), null));
+        typeahead.put(new MovieInfo("3", "Dark Knight Rises", 2012, List.of("Christian Bale"), null));
+
+        assertEquals(List.of("Batman Begins", "Dark Knight Rises", "The Dark Knight"), names(typeahead.suggest("bale", 5)));
+
+        typeahead.recordView("2");
+        typeahead.flushPopularity();
+        typeahead.put(new MovieInfo("4", "American Psycho", 2000, List.of("Christian Bale"), null));
+
+        assertEquals(List.of("The Dark Knight", "American Psycho", "Batman Begins", "Dark Knight Rises"),
+                names(typeahead.suggest("bale", 5)));
+
+        typeahead.remove("2");
+
+        assertEquals(List.of("American Psycho", "Batman Begins", "Dark Knight Rises"), names(typeahead.suggest("bale", 5)));
+    }
+
+    @Test
+    void suggestRefillsAPrefixWhenItsTopMovieLeaves() {
+
+        // every node keeps its best movie only
+        ReflectionTestUtils.setField(typeahead, "maxResults", 1);
+        typeahead.put(new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), null));
+        typeahead.put(new MovieInfo("2", "The Dark Knight", 2008, List.of("Christian Bale"), null));
+        typeahead.put(new MovieInfo("3", "Dark Knight Rises", 2012, List.of("Christian Bale"), null));
+
+        assertEquals(List.of("Batman Begins"), names(typeahead.suggest("b", 5)));
+
+        typeahead.remove("1");
+        assertEquals(List.of("Dark Knight Rises"), names(typeahead.suggest("b", 5)));
+
+        typeahead.put(new MovieInfo("3", "Rises", 2012, List.of("Christian Bale"), null));
+        assertEquals(List.of("Rises"), names(typeahead.suggest("b", 5)));
+        assertEquals(List.of("The Dark Knight"), names(typeahead.suggest("d", 5)));
+
+        typeahead.remove("3");
+        assertEquals(List.of("The Dark Knight"), names(typeahead.suggest("b", 5)));
+        assertTrue(typeahead.suggest("r", 5).isEmpty());
+    }
+
+    @Test
+    void buildLoadsTheIndex() {
+
+        var repository = mock(MovieInfoRepository.class);
+        var loaded = loadedTypeahead(repository);
+        when(repository.findAllAfter(isNull(), eq(0), anyInt(), anyList())).thenReturn(Flux.just(
+                new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), null),
+                new MovieInfo("2", "The Dark Knight", 2008, List.of("Christian Bale"), null),
+                new MovieInfo("3", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"), null)));
+
+        loaded.build();
+        try {
+            assertEquals(List.of("Batman Begins", "Dark Knight Rises", "The Dark Knight"), names(loaded.suggest("bale", 5)));
+            assertEquals(List.of("Dark Knight Rises"), names(loaded.suggest("tom", 5)));
+        } finally {
+            loaded.stop();
+        }
+    }
+
+    @Test
+    void buildLoadsAgainAfterAFailure() throws InterruptedException {
+
+        var repository = mock(MovieInfoRepository.class);
+        var loaded = loadedTypeahead(repository);
+        when(repository.findAllAfter(isNull(), eq(0), anyInt(), anyList())).thenReturn(
+                Flux.concat(Flux.just(new MovieInfo("1", "Batman Begins", 2005, List.of(), null)),
+                        Flux.error(new IllegalStateException("cursor lost"))),
+                Flux.just(new MovieInfo("1", "Batman Begins", 2005, List.of(), null),
+                        new MovieInfo("2", "The Dark Knight", 2008, List.of(), null)));
+
+        loaded.build();
+        try {
+            for (int i = 0; i < 50 && loaded.size() < 2; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(2, loaded.size());
+            assertEquals(List.of("The Dark Knight"), names(loaded.suggest("dark", 5)));
+        } finally {
+            loaded.stop();
+        }
+    }
+
+    @Test
+    void suggestIsCappedAtMaxResults() {
+
+        ReflectionTestUtils.setField(typeahead, "maxResults", 2);
+        typeahead.put(new MovieInfo("4", "Dark Shadows", 2012, List.of(), null));
+
+        assertEquals(2, typeahead.suggest("dark", 5).size());
+    }
+
+    private static MovieInfoTypeahead loadedTypeahead(MovieInfoRepository repository) {
+        var loaded = new MovieInfoTypeahead(repository);
+        ReflectionTestUtils.setField(loaded, "maxResults", 10);
+        ReflectionTestUtils.setField(loaded, "cursorBatchSize", 100);
+        ReflectionTestUtils.setField(loaded, "popularityFlush", Duration.ofHours(1));
+        return loaded;
+    }
+
+    private static List<String> names(List<TypeaheadSuggestion> suggestions) {
+        return suggestions.stream()
+                .map(TypeaheadSuggestion::getName)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,138 @@
+package com.reactivespring.moviesinfoservice.service;
+
+import com.reactivespring.moviesinfoservice.domain.MovieInfo;
+import com.reactivespring.moviesinfoservice.domain.YearCount;
+import com.reactivespring.moviesinfoservice.repository.MovieInfoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import javax.validation.Validator;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MoviesInfoServiceTest {
+
+    private final MovieInfoRepository movieInfoRepository = mock(MovieInfoRepository.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private MoviesInfoService moviesInfoService;
+
+    private final MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises",
+            2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+    @BeforeEach
+    void setUp() {
+        moviesInfoService = new MoviesInfoService(movieInfoRepository, mock(Validator.class),
+                mock(MovieInfoEventPublisher.class), meterRegistry, mock(MovieInfoTypeahead.class));
+        ReflectionTestUtils.setField(moviesInfoService, "cacheMaxSize", 100L);
+        ReflectionTestUtils.setField(moviesInfoService, "cacheTtl", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(moviesInfoService, "cacheNegativeTtl", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(moviesInfoService, "statsTtl", Duration.ofMinutes(1));
+        moviesInfoService.initCache();
+    }
+
+    @Test
+    void getAllMovieInfoById_readsThroughTheCache() {
+
+        when(movieInfoRepository.findById("abc")).thenReturn(Mono.just(movieInfo));
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(moviesInfoService.getAllMovieInfoById("abc", null))
+                    .assertNext(found -> assertEquals("Dark Knight Rises", found.getName()))
+                    .verifyComplete();
+        }
+
+        verify(movieInfoRepository, times(1)).findById("abc");
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "movieInfo").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void getAllMovieInfoById_cachesUnknownIds() {
+
+        when(movieInfoRepository.findById("unknown")).thenReturn(Mono.empty());
+
+        StepVerifier.create(moviesInfoService.getAllMovieInfoById("unknown", null))
+                .verifyComplete();
+        StepVerifier.create(moviesInfoService.getAllMovieInfoById("unknown", null))
+                .verifyComplete();
+
+        verify(movieInfoRepository, times(1)).findById("unknown");
+    }
+
+    @Test
+    void updateMovieInfo_invalidatesTheCache() {
+
+        var updatedMovieInfo = new MovieInfo("abc", "Dark Knight Rises1",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+        when(movieInfoRepository.findById("abc"))
+                .thenReturn(Mono.just(movieInfo), Mono.just(updatedMovieInfo));
+        when(movieInfoRepository.updateFields(eq("abc"), isNull(), anyMap()))
+                .thenReturn(Mono.just(updatedMovieInfo));
+
+        moviesInfoService.getAllMovieInfoById("abc", null).block();
+        moviesInfoService.updateMovieInfo(updatedMovieInfo, "abc").block();
+
+        StepVerifier.create(moviesInfoService.getAllMovieInfoById("abc", null))
+                .assertNext(found -> assertEquals("Dark Knight Rises1", found.getName()))
+                .verifyComplete();
+        verify(movieInfoRepository, times(2)).findById("abc");
+    }
+
+    @Test
+    void deleteMovieInfo_invalidatesTheCache() {
+
+        when(movieInfoRepository.findById("abc")).thenReturn(Mono.just(movieInfo), Mono.empty());
+        when(movieInfoRepository.deleteById("abc")).thenReturn(Mono.empty());
+
+        moviesInfoService.getAllMovieInfoById("abc", null).block();
+        moviesInfoService.deleteMovieInfo("abc").block();
+
+        StepVerifier.create(moviesInfoService.getAllMovieInfoById("abc", null))
+                .verifyComplete();
+    }
+
+    @Test
+    void getMovieInfoCountsByYear_sharesOneAggregation() {
+
+        when(movieInfoRepository.countByYear())
+                .thenReturn(Flux.just(new YearCount(2005, 1), new YearCount(2008, 2)));
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(moviesInfoService.getMovieInfoCountsByYear())
+                    .expectNext(new YearCount(2005, 1), new YearCount(2008, 2))
+                    .verifyComplete();
+        }
+
+        verify(movieInfoRepository, times(1)).countByYear();
+    }
+
+    @Test
+    void getMovieInfoCountsByYear_doesNotKeepErrors() {
+
+        when(movieInfoRepository.countByYear())
+                .thenReturn(Flux.error(new RuntimeException("aggregation failed")), Flux.just(new YearCount(2005, 1)));
+
+        StepVerifier.create(moviesInfoService.getMovieInfoCountsByYear())
+                .verifyError(RuntimeException.class);
+        StepVerifier.create(moviesInfoService.getMovieInfoCountsByYear())
+                .expectNext(new YearCount(2005, 1))
+                .verifyComplete();
+    }
+}
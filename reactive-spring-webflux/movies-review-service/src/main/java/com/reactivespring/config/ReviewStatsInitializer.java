@@ -0,0 +1,44 @@
+package com.reactivespring.config;
+
+import com.reactivespring.repository.ReviewStatsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Computes the review stats from the existing reviews the first time the service starts with them,
+ * from then on the review writes keep them up to date. The review and its stats are two writes, a
+ * stats change lost in between (the service stopping, say) is put right by rebuilding all the stats
+ * on {@code reviews.stats.rebuildCron}.
+ */
+@Component
+@EnableScheduling
+@Slf4j
+public class ReviewStatsInitializer {
+
+    private final ReviewStatsRepository reviewStatsRepository;
+
+    public ReviewStatsInitializer(ReviewStatsRepository reviewStatsRepository) {
+        this.reviewStatsRepository = reviewStatsRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initReviewStats() {
+        reviewStatsRepository.count()
+                .filter(count -> count == 0)
+                .flatMap(count -> reviewStatsRepository.rebuild().then(reviewStatsRepository.count()))
+                .doOnNext(count -> log.info("Computed the review stats of {} movies", count))
+                .block();
+    }
+
+    @Scheduled(cron = "${reviews.stats.rebuildCron:0 0 4 * * *}")
+    public void rebuildReviewStats() {
+        reviewStatsRepository.rebuild()
+                .then(reviewStatsRepository.count())
+                .doOnNext(count -> log.info("Rebuilt the review stats of {} movies", count))
+                .block();
+    }
+}
@@ -0,0 +1,36 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The first reviews of one movie in a multi-movie fetch.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieReviews {
+
+    private Long movieInfoId;
+
+    // at most the per movie limit, in id order
+    private List<Review> reviews;
+
+    // the movie has more reviews, they can be paged with ?movieInfoId=&after=
+    private boolean hasMore;
+
+    /**
+     * The first {@code limit} of the movie's reviews, which may hold one more to tell whether there are more.
+     */
+    public static MovieReviews of(Long movieInfoId, Collection<Review> reviews, int limit) {
+        var movieReviews = reviews == null ? List.<Review>of() : new ArrayList<>(reviews);
+        return movieReviews.size() > limit
+                ? new MovieReviews(movieInfoId, movieReviews.subList(0, limit), true)
+                : new MovieReviews(movieInfoId, movieReviews, false);
+    }
+}
@@ -0,0 +1,47 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The rating figures of one movie, kept up to date with every review written so that reading them
+ * does not depend on the number of reviews.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewStats {
+
+    @Id
+    private Long movieInfoId;
+
+    // all reviews, rated or not
+    private long count;
+
+    // the reviews with a rating, the sum, mean and histogram are over these
+    private long ratedCount;
+
+    private double sum;
+
+    // rated reviews per whole rating: "8" counts the ratings from 8 up to 9
+    private Map<String, Long> histogram;
+
+    public static ReviewStats empty(Long movieInfoId) {
+        return new ReviewStats(movieInfoId, 0, 0, 0, new HashMap<>());
+    }
+
+    public static String histogramBucket(double rating) {
+        return String.valueOf((long) Math.floor(rating));
+    }
+
+    public Double getMean() {
+        return ratedCount == 0 ? null : sum / ratedCount;
+    }
+}
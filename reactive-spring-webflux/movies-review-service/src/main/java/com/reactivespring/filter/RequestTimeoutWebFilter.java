@@ -0,0 +1,52 @@
+package com.reactivespring.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Honours the caller's remaining time budget passed in the {@value #REQUEST_TIMEOUT_HEADER} header
+ * (milliseconds): once it has run out the request is cancelled, which also cancels the database
+ * query, and answered with 504 if nothing has been written yet.
+ */
+@Component
+@Slf4j
+public class RequestTimeoutWebFilter implements WebFilter {
+
+    public static final String REQUEST_TIMEOUT_HEADER = "X-Request-Timeout";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var header = exchange.getRequest().getHeaders().getFirst(REQUEST_TIMEOUT_HEADER);
+        if (header == null) {
+            return chain.filter(exchange);
+        }
+
+        Duration timeout;
+        try {
+            timeout = Duration.ofMillis(Math.max(0, Long.parseLong(header.trim())));
+        } catch (NumberFormatException ex) {
+            log.debug("Ignoring invalid {} header : {}", REQUEST_TIMEOUT_HEADER, header);
+            return chain.filter(exchange);
+        }
+
+        return chain.filter(exchange)
+                .timeout(timeout)
+                .onErrorResume(TimeoutException.class, ex -> {
+                    log.warn("Request {} exceeded the caller's timeout of {}", exchange.getRequest().getPath(), timeout);
+                    var response = exchange.getResponse();
+                    if (response.isCommitted()) {
+                        return Mono.error(ex);
+                    }
+                    response.setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+                    return response.setComplete();
+                });
+    }
+}
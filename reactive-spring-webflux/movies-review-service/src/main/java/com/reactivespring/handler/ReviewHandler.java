@@ -1,12 +1,19 @@
 package com.reactivespring.handler;
 
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.exception.ReviewConflictException;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
@@ -15,6 +22,12 @@ import reactor.core.publisher.Mono;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Component
@@ -27,14 +40,40 @@ public class ReviewHandler {
 
     private ReviewReactiveRepository reviewReactiveRepository;
 
-    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository) {
+    private ReviewStatsRepository reviewStatsRepository;
+
+    @Value("${reviews.page.defaultLimit:100}")
+    private int defaultPageLimit;
+
+    @Value("${reviews.page.maxLimit:1000}")
+    private int maxPageLimit;
+
+    @Value("${reviews.perMovie.defaultLimit:20}")
+    private int defaultPerMovieLimit;
+
+    @Value("${reviews.top.defaultLimit:5}")
+    private int defaultTopLimit;
+
+    @Value("${reviews.cursorBatchSize:100}")
+    private int cursorBatchSize;
+
+    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewStatsRepository reviewStatsRepository) {
         this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewStatsRepository = reviewStatsRepository;
     }
 
+    /**
+     * Inserts, never replaces: a review sent with the id of an existing one is a conflict, as counting it
+     * into the movie's stats again would count that review twice.
+     */
     public Mono<ServerResponse> addReview(ServerRequest request) {
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
-                .flatMap(reviewReactiveRepository::save)
+                .flatMap(review -> reviewReactiveRepository.insert(review)
+                        .onErrorMap(DuplicateKeyException.class,
+                                ex -> new ReviewConflictException("Review already exists for the given Review Id")))
+                .flatMap(savedReview -> applyStatsChange(savedReview.getMovieInfoId(), 1,
+                        null, savedReview.getRating()).thenReturn(savedReview))
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
     }
 
@@ -50,45 +89,183 @@ public class ReviewHandler {
         }
     }
 
+    /**
+     * One page of reviews in id order, only the movie's with {@code movieInfoId}. The next page starts
+     * {@code after} the last review id of this one. Without {@code limit} and {@code after} all the
+     * reviews are answered, as callers like the movies service expect a movie's complete list.
+     * Several movies ({@code movieInfoId=1,2,3}) are fetched in one query, plus one for the movies after
+     * each movie that has more than {@code limit} reviews, and answered grouped by movie in the
+     * requested order, with at most {@code limit} reviews each.
+     */
     public Mono<ServerResponse> getReview(ServerRequest request) {
 
-        var movieInfoId = request.queryParam("movieInfoId");
+        var movieInfoIds = movieInfoIds(request);
+        var after = request.queryParam("after").orElse(null);
 
-        Flux<Review> reviewsFlux;
-        if (movieInfoId.isPresent()) {
-            reviewsFlux = reviewReactiveRepository.findByMovieInfoId(Long.valueOf(movieInfoId.get())).log();
-        } else {
-            reviewsFlux = reviewReactiveRepository.findAll();
+        if (movieInfoIds.size() > 1) {
+            var perMovieLimit = request.queryParam("limit").map(this::pageLimit).orElse(defaultPerMovieLimit);
+            return ServerResponse.ok().body(reviewsByMovie(movieInfoIds, perMovieLimit), MovieReviews.class);
         }
+        // 0 reads to the end
+        var limit = request.queryParam("limit").map(this::pageLimit).orElse(after == null ? 0 : defaultPageLimit);
+        var reviewsFlux = reviewReactiveRepository.findAfter(movieInfoIds.isEmpty() ? null : movieInfoIds.get(0),
+                after, limit, cursorBatchSize);
         return buildServerResponse(reviewsFlux);
 
     }
 
+    private Flux<MovieReviews> reviewsByMovie(List<Long> movieInfoIds, int perMovieLimit) {
+        return firstReviews(new TreeSet<>(movieInfoIds), perMovieLimit)
+                .collectMultimap(Review::getMovieInfoId)
+                .flatMapIterable(reviews -> movieInfoIds.stream()
+                        .distinct()
+                        .map(movieInfoId -> MovieReviews.of(movieInfoId, reviews.get(movieInfoId), perMovieLimit))
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Each movie's first reviews, one more than the limit to tell whether it has more. The movies are
+     * read in id order from one $in cursor, once a movie is full that cursor is closed and the movies
+     * after it are read from a new one, so the reviews past a movie's limit are never read.
+     */
+    private Flux<Review> firstReviews(NavigableSet<Long> movieInfoIds, int perMovieLimit) {
+        return Flux.defer(() -> {
+            var counts = new HashMap<Long, Integer>();
+            var fullMovieInfoId = new AtomicReference<Long>();
+            return reviewReactiveRepository.findByMovieInfoIds(movieInfoIds, Math.min(cursorBatchSize, perMovieLimit + 1))
+                    .takeUntil(review -> counts.merge(review.getMovieInfoId(), 1, Integer::sum) > perMovieLimit
+                            && fullMovieInfoId.compareAndSet(null, review.getMovieInfoId()))
+                    .concatWith(Flux.defer(() -> {
+                        var fullMovie = fullMovieInfoId.get();
+                        var nextMovies = fullMovie == null ? null : movieInfoIds.tailSet(fullMovie, false);
+                        return nextMovies == null || nextMovies.isEmpty()
+                                ? Flux.empty()
+                                : firstReviews(nextMovies, perMovieLimit);
+                    }));
+        });
+    }
+
+    /**
+     * All the reviews as NDJSON in id order, starting {@code after} the given review id. Demand is
+     * requested from the cursor one batch at a time, so a slow consumer holds at most a couple of
+     * batches in memory.
+     */
+    public Mono<ServerResponse> streamReviews(ServerRequest request) {
+
+        var movieInfoIds = movieInfoIds(request);
+        var after = request.queryParam("after").orElse(null);
+
+        var reviewsFlux = movieInfoIds.size() > 1
+                ? reviewReactiveRepository.findByMovieInfoIds(movieInfoIds, cursorBatchSize)
+                : reviewReactiveRepository.findAfter(movieInfoIds.isEmpty() ? null : movieInfoIds.get(0),
+                after, 0, cursorBatchSize);
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(reviewsFlux.limitRate(cursorBatchSize), Review.class);
+    }
+
+    /**
+     * The movie's best rated reviews, {@code limit} of them.
+     */
+    public Mono<ServerResponse> getTopReviews(ServerRequest request) {
+
+        var movieInfoId = requiredMovieInfoId(request);
+        var limit = request.queryParam("limit").map(this::pageLimit).orElse(defaultTopLimit);
+
+        return buildServerResponse(reviewReactiveRepository.findTopRated(movieInfoId, limit));
+    }
+
+    /**
+     * The movie's review count, mean rating and rating histogram, read from one stored document.
+     */
+    public Mono<ServerResponse> getReviewStats(ServerRequest request) {
+
+        var movieInfoId = requiredMovieInfoId(request);
+
+        return reviewStatsRepository.findById(movieInfoId)
+                .defaultIfEmpty(ReviewStats.empty(movieInfoId))
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    /**
+     * Recomputes the movie's stats from its reviews, to put them right after a review write whose stats
+     * change was lost.
+     */
+    public Mono<ServerResponse> rebuildReviewStats(ServerRequest request) {
+
+        var movieInfoId = requiredMovieInfoId(request);
+
+        return reviewStatsRepository.rebuild(movieInfoId)
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    private Long requiredMovieInfoId(ServerRequest request) {
+        return request.queryParam("movieInfoId")
+                .map(String::trim)
+                .map(Long::valueOf)
+                .orElseThrow(() -> new ReviewDataException("movieInfoId : must be present"));
+    }
+
+    // movieInfoId=1,2,3 fetches the reviews of several movies in one query
+    private List<Long> movieInfoIds(ServerRequest request) {
+        return request.queryParam("movieInfoId")
+                .map(movieInfoId -> Arrays.stream(movieInfoId.split(","))
+                        .map(String::trim)
+                        .map(Long::valueOf)
+                        .collect(Collectors.toList()))
+                .orElse(List.of());
+    }
+
+    private int pageLimit(String limit) {
+        try {
+            return Math.min(Math.max(Integer.parseInt(limit.trim()), 1), maxPageLimit);
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("limit : must be a number");
+        }
+    }
+
     private Mono<ServerResponse> buildServerResponse(Flux<Review> reviewsFlux) {
         return ServerResponse.ok().body(reviewsFlux, Review.class);
     }
 
+    /**
+     * The review and its movie's stats are updated one after the other. The stats are moved from the
+     * rating the update replaced, as returned by Mongo, so concurrent updates are all accounted for.
+     */
     public Mono<ServerResponse> updateReview(ServerRequest request) {
 
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactiveRepository.findById(reviewId)
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given Review Id")));
 
-        return existingReview.flatMap(review -> request.bodyToMono(Review.class)
-                .map( reqReview -> {
-                    review.setComment(reqReview.getComment());
-                    review.setRating(reqReview.getRating());
-                    return review;
-                })
-                .flatMap(reviewUpdated -> reviewReactiveRepository.save(reviewUpdated))
-                .flatMap(reviewSaved -> ServerResponse.ok().bodyValue(reviewSaved))
-        );
+        return request.bodyToMono(Review.class)
+                .flatMap(reqReview -> reviewReactiveRepository.updateCommentAndRating(reviewId,
+                                reqReview.getComment(), reqReview.getRating())
+                        .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given Review Id")))
+                        .flatMap(previousReview -> applyStatsChange(previousReview.getMovieInfoId(), 0,
+                                        previousReview.getRating(), reqReview.getRating())
+                                .thenReturn(new Review(reviewId, previousReview.getMovieInfoId(),
+                                        reqReview.getComment(), reqReview.getRating()))))
+                .flatMap(reviewSaved -> ServerResponse.ok().bodyValue(reviewSaved));
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactiveRepository.findById(reviewId);
-        return existingReview.flatMap(review -> reviewReactiveRepository.deleteById(review.getReviewId()))
+        return reviewReactiveRepository.findAndDeleteById(reviewId)
+                .flatMap(deletedReview -> applyStatsChange(deletedReview.getMovieInfoId(), -1,
+                        deletedReview.getRating(), null))
                 .then(ServerResponse.noContent().build());
     }
+
+    /**
+     * The review is already written when its movie's stats change, so a failed change is not retried
+     * as an increment, that could count it twice: the movie's stats are rebuilt from its reviews instead.
+     * Should that fail too, the stats are put right by the next {@link #rebuildReviewStats} of the movie
+     * or the scheduled rebuild of all of them.
+     */
+    private Mono<Void> applyStatsChange(Long movieInfoId, long reviews, Double removedRating, Double addedRating) {
+        return reviewStatsRepository.applyChange(movieInfoId, reviews, removedRating, addedRating)
+                .onErrorResume(ex -> {
+                    log.warn("Review stats change of movie {} failed, rebuilding them : {}", movieInfoId, ex.getMessage());
+                    return reviewStatsRepository.rebuild(movieInfoId).then();
+                });
+    }
 }
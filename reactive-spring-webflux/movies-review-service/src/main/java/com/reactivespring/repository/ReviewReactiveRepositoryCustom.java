@@ -0,0 +1,39 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface ReviewReactiveRepositoryCustom {
+
+    /**
+     * Reviews in id order starting right after {@code afterId}, or from the first one when it is null,
+     * only the movie's when {@code movieInfoId} is not null. A {@code limit} of 0 returns all of them,
+     * fetched from the cursor {@code cursorBatchSize} documents at a time.
+     */
+    Flux<Review> findAfter(Long movieInfoId, String afterId, int limit, int cursorBatchSize);
+
+    /**
+     * The reviews of all the movies in (movieInfoId, id) order, so each movie's reviews come together.
+     */
+    Flux<Review> findByMovieInfoIds(Collection<Long> movieInfoIds, int cursorBatchSize);
+
+    /**
+     * The movie's {@code limit} best rated reviews, best first. Reviews without a rating are left out.
+     */
+    Flux<Review> findTopRated(Long movieInfoId, int limit);
+
+    /**
+     * Sets the review's comment and rating in a single atomic findAndModify, returning the review as it
+     * was before. Completes empty when there is no such review.
+     */
+    Mono<Review> updateCommentAndRating(String reviewId, String comment, Double rating);
+
+    /**
+     * Deletes the review, returning it. Completes empty when there is no such review, so of concurrent
+     * deletes only one gets it.
+     */
+    Mono<Review> findAndDeleteById(String reviewId);
+}
@@ -0,0 +1,83 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public class ReviewReactiveRepositoryImpl implements ReviewReactiveRepositoryCustom {
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    public ReviewReactiveRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Flux<Review> findAfter(Long movieInfoId, String afterId, int limit, int cursorBatchSize) {
+        // a movie's reviews are read in order from the (movieInfoId, _id) index, all reviews from the _id index
+        var query = new Query()
+                .with(Sort.by("reviewId"))
+                .limit(limit)
+                .cursorBatchSize(cursorBatchSize);
+        if (movieInfoId != null) {
+            query.addCriteria(Criteria.where("movieInfoId").is(movieInfoId));
+        }
+        if (afterId != null) {
+            query.addCriteria(afterIdCriteria(afterId));
+        }
+        return mongoOperations.find(query, Review.class);
+    }
+
+    @Override
+    public Flux<Review> findByMovieInfoIds(Collection<Long> movieInfoIds, int cursorBatchSize) {
+        // a single $in over the (movieInfoId, _id) index, which already returns the reviews in this order
+        var query = Query.query(Criteria.where("movieInfoId").in(movieInfoIds))
+                .with(Sort.by("movieInfoId", "reviewId"))
+                .cursorBatchSize(cursorBatchSize);
+        return mongoOperations.find(query, Review.class);
+    }
+
+    @Override
+    public Flux<Review> findTopRated(Long movieInfoId, int limit) {
+        // equal ratings keep a stable order, so the sort is still the (movieInfoId, rating, _id) index order
+        var query = Query.query(Criteria.where("movieInfoId").is(movieInfoId).and("rating").ne(null))
+                .with(Sort.by(Sort.Direction.DESC, "rating", "reviewId"))
+                .limit(limit);
+        return mongoOperations.find(query, Review.class);
+    }
+
+    @Override
+    public Mono<Review> updateCommentAndRating(String reviewId, String comment, Double rating) {
+        var update = new Update()
+                .set("comment", comment)
+                .set("rating", rating);
+        return mongoOperations.findAndModify(Query.query(Criteria.where("reviewId").is(reviewId)), update,
+                FindAndModifyOptions.options().returnNew(false), Review.class);
+    }
+
+    @Override
+    public Mono<Review> findAndDeleteById(String reviewId) {
+        return mongoOperations.findAndRemove(Query.query(Criteria.where("reviewId").is(reviewId)), Review.class);
+    }
+
+    private Criteria afterIdCriteria(String afterId) {
+        if (ObjectId.isValid(afterId)) {
+            return Criteria.where("reviewId").gt(new ObjectId(afterId));
+        }
+        // ids are either client supplied strings or generated ObjectIds. $gt only compares values of the
+        // same type, and every ObjectId sorts after every string, so they all come after a string id.
+        return new Criteria().orOperator(
+                Criteria.where("reviewId").gt(afterId),
+                Criteria.where("reviewId").type(JsonSchemaObject.Type.objectIdType()));
+    }
+}
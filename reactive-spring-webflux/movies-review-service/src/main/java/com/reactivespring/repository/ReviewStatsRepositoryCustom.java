@@ -0,0 +1,27 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.ReviewStats;
+import reactor.core.publisher.Mono;
+
+public interface ReviewStatsRepositoryCustom {
+
+    /**
+     * Adds {@code reviews} (negative to remove them) to the movie's review count and moves one rating
+     * from {@code removedRating} to {@code addedRating}, either may be null. All the figures change in
+     * a single atomic upsert, so concurrent changes never lose each other's increments.
+     */
+    Mono<Void> applyChange(Long movieInfoId, long reviews, Double removedRating, Double addedRating);
+
+    /**
+     * Recomputes the stats of every movie from its reviews and replaces the stored ones, the stats of
+     * movies without reviews are removed. A review written while this runs may be missed or counted
+     * twice, until the next rebuild.
+     */
+    Mono<Void> rebuild();
+
+    /**
+     * Recomputes the stats of one movie from its reviews and replaces the stored ones, removes them
+     * when the movie has no reviews. Answers the stats as rebuilt.
+     */
+    Mono<ReviewStats> rebuild(Long movieInfoId);
+}
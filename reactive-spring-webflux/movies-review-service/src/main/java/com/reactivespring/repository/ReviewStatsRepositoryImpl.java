@@ -0,0 +1,114 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ReviewStatsRepositoryImpl implements ReviewStatsRepositoryCustom {
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    public ReviewStatsRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Mono<Void> applyChange(Long movieInfoId, long reviews, Double removedRating, Double addedRating) {
+        long ratedReviews = 0;
+        double sum = 0;
+        // a re-rating within the same bucket leaves the histogram as it is
+        var histogram = new HashMap<String, Long>();
+        if (removedRating != null) {
+            ratedReviews--;
+            sum -= removedRating;
+            histogram.merge(ReviewStats.histogramBucket(removedRating), -1L, Long::sum);
+        }
+        if (addedRating != null) {
+            ratedReviews++;
+            sum += addedRating;
+            histogram.merge(ReviewStats.histogramBucket(addedRating), 1L, Long::sum);
+        }
+
+        var update = new Update();
+        if (reviews != 0) {
+            update.inc("count", reviews);
+        }
+        if (ratedReviews != 0) {
+            update.inc("ratedCount", ratedReviews);
+        }
+        if (sum != 0) {
+            update.inc("sum", sum);
+        }
+        histogram.forEach((bucket, change) -> {
+            if (change != 0) {
+                update.inc("histogram." + bucket, change);
+            }
+        });
+        if (update.getUpdateObject().isEmpty()) {
+            return Mono.empty();
+        }
+        return mongoOperations.upsert(Query.query(Criteria.where("movieInfoId").is(movieInfoId)), update, ReviewStats.class)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> rebuild() {
+        return computeStats(new Criteria())
+                .flatMapMany(stats -> Flux.fromIterable(stats.values())
+                        .flatMap(mongoOperations::save)
+                        .thenMany(mongoOperations.remove(Query.query(Criteria.where("movieInfoId").nin(stats.keySet())),
+                                ReviewStats.class)))
+                .then();
+    }
+
+    @Override
+    public Mono<ReviewStats> rebuild(Long movieInfoId) {
+        return computeStats(Criteria.where("movieInfoId").is(movieInfoId))
+                .flatMap(stats -> stats.containsKey(movieInfoId)
+                        ? mongoOperations.save(stats.get(movieInfoId))
+                        : mongoOperations.remove(Query.query(Criteria.where("movieInfoId").is(movieInfoId)), ReviewStats.class)
+                        .thenReturn(ReviewStats.empty(movieInfoId)));
+    }
+
+    private Mono<Map<Long, ReviewStats>> computeStats(Criteria reviews) {
+        // Mongo counts the reviews per movie and whole rating, only those rows are folded here
+        var aggregation = Aggregation.newAggregation(Review.class,
+                Aggregation.match(reviews),
+                Aggregation.project("movieInfoId", "rating")
+                        .and(ArithmeticOperators.Floor.floorValueOf("rating")).as("bucket"),
+                Aggregation.group("movieInfoId", "bucket").count().as("reviews").sum("rating").as("sum"));
+
+        return mongoOperations.aggregate(aggregation, Document.class)
+                .collect(HashMap::new, ReviewStatsRepositoryImpl::fold);
+    }
+
+    private static void fold(Map<Long, ReviewStats> stats, Document row) {
+        var group = row.get("_id", Document.class);
+        var movieInfoId = (Number) group.get("movieInfoId");
+        if (movieInfoId == null) {
+            return;
+        }
+        var movieStats = stats.computeIfAbsent(movieInfoId.longValue(), ReviewStats::empty);
+        var reviews = ((Number) row.get("reviews")).longValue();
+        movieStats.setCount(movieStats.getCount() + reviews);
+
+        // the bucket is null for the reviews without a rating
+        var bucket = (Number) group.get("bucket");
+        if (bucket != null) {
+            movieStats.setRatedCount(movieStats.getRatedCount() + reviews);
+            movieStats.setSum(movieStats.getSum() + ((Number) row.get("sum")).doubleValue());
+            movieStats.getHistogram().put(ReviewStats.histogramBucket(bucket.doubleValue()), reviews);
+        }
+    }
+}
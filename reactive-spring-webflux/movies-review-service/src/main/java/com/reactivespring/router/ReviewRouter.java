@@ -3,6 +3,8 @@ package com.reactivespring.router;
 import com.reactivespring.handler.ReviewHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RequestPredicate;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
@@ -17,7 +19,11 @@ public class ReviewRouter {
 
         return route().nest(path("/v1/reviews"), builder -> {
                     builder.POST("", request -> reviewHandler.addReview(request))
+                            .GET("", acceptsNdjson(), reviewHandler::streamReviews)
                             .GET("", reviewHandler::getReview)
+                            .GET("/top", reviewHandler::getTopReviews)
+                            .GET("/stats", reviewHandler::getReviewStats)
+                            .POST("/stats/rebuild", reviewHandler::rebuildReviewStats)
                             .PUT("/{id}", request -> reviewHandler.updateReview(request))
                             .DELETE("/{id}", request -> reviewHandler.deleteReview(request));
                 })
@@ -28,4 +34,10 @@ public class ReviewRouter {
 
     }
 
+    // RequestPredicates.accept would also match */* and send every client without an Accept header to the stream
+    private static RequestPredicate acceptsNdjson() {
+        return request -> request.headers().accept().stream()
+                .anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+    }
+
 }
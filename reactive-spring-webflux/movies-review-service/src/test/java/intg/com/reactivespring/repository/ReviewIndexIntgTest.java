@@ -0,0 +1,100 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.config.MongoIndexInitializer;
+import com.reactivespring.domain.Review;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataMongoTest
+@ActiveProfiles("test")
+@Import(MongoIndexInitializer.class)
+class ReviewIndexIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    MongoIndexInitializer mongoIndexInitializer;
+
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoIndexInitializer.ensureIndexes(Review.class).block();
+
+        var reviewsList = List.of(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Good Movie", 7.0),
+                new Review(null, 1L, "Unrated Movie", null),
+                new Review(null, 2L, "Excellent Movie", 8.0));
+        reviewReactiveRepository.saveAll(reviewsList)
+                .blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+    }
+
+    @Test
+    void findTopRated() {
+
+        StepVerifier.create(reviewReactiveRepository.findTopRated(1L, 5))
+                .assertNext(review -> assertEquals(9.0, review.getRating()))
+                .assertNext(review -> assertEquals(7.0, review.getRating()))
+                .verifyComplete();
+    }
+
+    @Test
+    void findByMovieInfoId_usesIndex() {
+
+        var winningPlan = winningPlan(new Document("movieInfoId", 1L), new Document("_id", 1));
+
+        assertTrue(winningPlan.contains("IXSCAN"), winningPlan);
+        assertFalse(winningPlan.contains("COLLSCAN"), winningPlan);
+        assertFalse(winningPlan.contains("\"SORT\""), winningPlan);
+    }
+
+    @Test
+    void findByMovieInfoIds_usesIndexOrder() {
+
+        var winningPlan = winningPlan(new Document("movieInfoId", new Document("$in", List.of(1L, 2L))),
+                new Document("movieInfoId", 1).append("_id", 1));
+
+        assertTrue(winningPlan.contains("movieInfoId_id"), winningPlan);
+        assertFalse(winningPlan.contains("\"SORT\""), winningPlan);
+    }
+
+    @Test
+    void findTopRated_usesIndexOrder() {
+
+        var winningPlan = winningPlan(new Document("movieInfoId", 1L).append("rating", new Document("$ne", null)),
+                new Document("rating", -1).append("_id", -1));
+
+        assertTrue(winningPlan.contains("movieInfoId_rating_id"), winningPlan);
+        assertFalse(winningPlan.contains("COLLSCAN"), winningPlan);
+        // the index already returns the best rated first
+        assertFalse(winningPlan.contains("\"SORT\""), winningPlan);
+    }
+
+    private String winningPlan(Document filter, Document sort) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.find(filter).sort(sort).explain()))
+                .map(explain -> explain.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson())
+                .block();
+    }
+}
@@ -0,0 +1,129 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataMongoTest
+@ActiveProfiles("test")
+class ReviewStatsRepositoryIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewStatsRepository reviewStatsRepository;
+
+    @BeforeEach
+    void setUp() {
+        var reviewsList = List.of(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Awesome Movie1", 9.5),
+                new Review(null, 1L, "Unrated Movie", null),
+                new Review(null, 2L, "Excellent Movie", 8.0));
+        reviewReactiveRepository.saveAll(reviewsList)
+                .blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+        reviewStatsRepository.deleteAll().block();
+    }
+
+    @Test
+    void rebuild() {
+
+        reviewStatsRepository.rebuild().block();
+
+        StepVerifier.create(reviewStatsRepository.findById(1L))
+                .assertNext(reviewStats -> {
+                    assertEquals(3, reviewStats.getCount());
+                    assertEquals(2, reviewStats.getRatedCount());
+                    assertEquals(9.25, reviewStats.getMean());
+                    assertEquals(2L, reviewStats.getHistogram().get("9"));
+                })
+                .verifyComplete();
+        StepVerifier.create(reviewStatsRepository.count())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void rebuild_removesTheStatsOfMoviesWithoutReviews() {
+
+        reviewStatsRepository.applyChange(5L, 1, null, 8.0).block();
+
+        reviewStatsRepository.rebuild().block();
+
+        StepVerifier.create(reviewStatsRepository.findById(5L))
+                .verifyComplete();
+        StepVerifier.create(reviewStatsRepository.count())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void rebuild_oneMovie() {
+
+        // stats gone wrong, as when a review was written but its stats change was lost
+        reviewStatsRepository.applyChange(1L, 1, null, 4.0).block();
+        reviewStatsRepository.applyChange(2L, 1, null, 4.0).block();
+
+        StepVerifier.create(reviewStatsRepository.rebuild(1L))
+                .assertNext(reviewStats -> {
+                    assertEquals(3, reviewStats.getCount());
+                    assertEquals(2, reviewStats.getRatedCount());
+                    assertEquals(9.25, reviewStats.getMean());
+                })
+                .verifyComplete();
+        StepVerifier.create(reviewStatsRepository.findById(1L))
+                .assertNext(reviewStats -> assertEquals(2L, reviewStats.getHistogram().get("9")))
+                .verifyComplete();
+        // the other movies are left as they are
+        StepVerifier.create(reviewStatsRepository.findById(2L))
+                .assertNext(reviewStats -> assertEquals(4.0, reviewStats.getMean()))
+                .verifyComplete();
+    }
+
+    @Test
+    void rebuild_oneMovieWithoutReviews() {
+
+        reviewStatsRepository.applyChange(5L, 1, null, 8.0).block();
+
+        StepVerifier.create(reviewStatsRepository.rebuild(5L))
+                .assertNext(reviewStats -> assertEquals(0, reviewStats.getCount()))
+                .verifyComplete();
+        StepVerifier.create(reviewStatsRepository.findById(5L))
+                .verifyComplete();
+    }
+
+    @Test
+    void applyChange_concurrently() {
+
+        Flux.range(0, 50)
+                .flatMap(i -> reviewStatsRepository.applyChange(5L, 1, null, 8.0))
+                .blockLast();
+        reviewStatsRepository.applyChange(5L, 0, 8.0, 6.0).block();
+
+        StepVerifier.create(reviewStatsRepository.findById(5L))
+                .assertNext(reviewStats -> {
+                    assertEquals(50, reviewStats.getCount());
+                    assertEquals(50, reviewStats.getRatedCount());
+                    assertEquals(398.0, reviewStats.getSum());
+                    assertEquals(49L, reviewStats.getHistogram().get("8"));
+                    assertEquals(1L, reviewStats.getHistogram().get("6"));
+                })
+                .verifyComplete();
+    }
+}
@@ -3,17 +3,24 @@ package com.reactivespring.routes;
 
 import com.reactivespring.domain.Review;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
 @AutoConfigureWebTestClient
@@ -26,13 +33,17 @@ public class ReviewsIntgTest {
     @Autowired
     ReviewReactiveRepository reviewReactiveRepository;
 
+    @Autowired
+    ReviewStatsRepository reviewStatsRepository;
+
 
     @BeforeEach
     void setUp() {
         var reviewsList = List.of(
                 new Review(null, 1L, "Awesome Movie", 9.0),
                 new Review(null, 1L, "Awesome Movie1", 9.0),
-                new Review(null, 2L, "Excellent Movie", 8.0));
+                new Review(null, 2L, "Excellent Movie", 8.0),
+                new Review("abc", 1L, "Awesome Movie2", 7.0));
         reviewReactiveRepository.saveAll(reviewsList)
                 .blockLast();
     }
@@ -40,6 +51,7 @@ public class ReviewsIntgTest {
     @AfterEach
     void tearDown() {
         reviewReactiveRepository.deleteAll().block();
+        reviewStatsRepository.deleteAll().block();
     }
 
     @Test
@@ -62,4 +74,145 @@ public class ReviewsIntgTest {
 
 
     }
+
+    @Test
+    void getReviewsPages() {
+
+        var firstPage = webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(2)
+                .returnResult()
+                .getResponseBody();
+
+        // string ids sort before generated ObjectIds
+        assertEquals("abc", firstPage.get(0).getReviewId());
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&limit=2&after=" + firstPage.get(1).getReviewId())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void streamReviews() {
+
+        var reviews = webTestClient.get()
+                .uri(REVIEWS_URL + "?after=abc")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        StepVerifier.create(reviews)
+                .expectNextCount(3)
+                .verifyComplete();
+    }
+
+    @Test
+    void getReviewsForSeveralMovies() {
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=2,1&limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$[0].movieInfoId").isEqualTo(2)
+                .jsonPath("$[0].reviews.length()").isEqualTo(1)
+                .jsonPath("$[0].hasMore").isEqualTo(false)
+                .jsonPath("$[1].movieInfoId").isEqualTo(1)
+                .jsonPath("$[1].reviews.length()").isEqualTo(2)
+                .jsonPath("$[1].hasMore").isEqualTo(true);
+    }
+
+    @Test
+    void getTopReviews() {
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/top?movieInfoId=1&limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[1].rating").isEqualTo(9.0);
+    }
+
+    @Test
+    void addReviewExistingReviewId() {
+
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review("abc", 1L, "Awesome Movie3", 5.0))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        var review = reviewReactiveRepository.findById("abc").block();
+        assertNotNull(review);
+        assertEquals("Awesome Movie2", review.getComment());
+    }
+
+    @Test
+    void reviewStatsFollowTheReviewWrites() {
+
+        var savedReview = webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review(null, 3L, "Awesome Movie", 9.0))
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review(null, 3L, "Good Movie", 7.0))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", savedReview.getReviewId())
+                .bodyValue(new Review(null, 3L, "Excellent Movie", 8.0))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId=3")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.mean").isEqualTo(7.5)
+                .jsonPath("$.histogram.8").isEqualTo(1)
+                .jsonPath("$.histogram.9").isEqualTo(0);
+
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", savedReview.getReviewId())
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId=3")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(1)
+                .jsonPath("$.mean").isEqualTo(7.0);
+    }
 }
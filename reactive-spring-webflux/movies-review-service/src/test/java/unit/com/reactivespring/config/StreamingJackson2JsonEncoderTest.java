@@ -0,0 +1,102 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingJackson2JsonEncoderTest {
+
+    private final StreamingJackson2JsonEncoder encoder = new StreamingJackson2JsonEncoder(new ObjectMapper());
+
+    private final ResolvableType reviewType = ResolvableType.forClass(Review.class);
+
+    @Test
+    void writesEachReviewBeforeTheNextOneArrives() {
+
+        var reviews = Sinks.many().unicast().<Review>onBackpressureBuffer();
+
+        var encoded = encoder.encode(reviews.asFlux(), DefaultDataBufferFactory.sharedInstance,
+                        reviewType, MediaType.APPLICATION_JSON, null)
+                .map(StreamingJackson2JsonEncoderTest::asString);
+
+        // the Flux is still open after every review, a list would only be written once it completes
+        StepVerifier.create(encoded)
+                .then(() -> reviews.tryEmitNext(new Review("abc", 1L, "Awesome Movie", 9.0)))
+                .expectNext("[", "{\"reviewId\":\"abc\",\"movieInfoId\":1,\"comment\":\"Awesome Movie\",\"rating\":9.0}")
+                .then(() -> reviews.tryEmitNext(new Review("def", 1L, "Excellent Movie", 8.0)))
+                .expectNext(",", "{\"reviewId\":\"def\",\"movieInfoId\":1,\"comment\":\"Excellent Movie\",\"rating\":8.0}")
+                .then(reviews::tryEmitComplete)
+                .expectNext("]")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void readsTheReviewsNoFasterThanTheArrayIsTaken() {
+
+        var requested = new AtomicLong();
+        var reviews = Flux.range(0, 10_000)
+                .doOnRequest(requested::addAndGet)
+                .map(i -> new Review(String.valueOf(i), 1L, "Awesome Movie", 9.0));
+
+        var encoded = encoder.encode(reviews, DefaultDataBufferFactory.sharedInstance,
+                        reviewType, MediaType.APPLICATION_JSON, null)
+                .map(StreamingJackson2JsonEncoderTest::asString);
+
+        StepVerifier.create(encoded, 4)
+                .expectNext("[")
+                .expectNextMatches(review -> review.startsWith("{\"reviewId\":\"0\""))
+                .expectNext(",")
+                .expectNextMatches(review -> review.startsWith("{\"reviewId\":\"1\""))
+                .thenCancel()
+                .verify();
+
+        // a prefetch worth of reviews, not all of them
+        assertTrue(requested.get() < 100, "requested " + requested.get() + " reviews");
+    }
+
+    @Test
+    void encodesAnEmptyArray() {
+
+        var encoded = encoder.encode(Flux.empty(), DefaultDataBufferFactory.sharedInstance,
+                        reviewType, MediaType.APPLICATION_JSON, null)
+                .map(StreamingJackson2JsonEncoderTest::asString);
+
+        StepVerifier.create(encoded.reduce(String::concat))
+                .expectNext("[]")
+                .verifyComplete();
+    }
+
+    @Test
+    void writesNothingBeforeAnErrorAsTheFirstSignal() {
+
+        var encoded = encoder.encode(Flux.error(new IllegalStateException("boom")), DefaultDataBufferFactory.sharedInstance,
+                        reviewType, MediaType.APPLICATION_JSON, null)
+                .map(StreamingJackson2JsonEncoderTest::asString);
+
+        // no bytes go out, so the response status is still open for the error handler
+        StepVerifier.create(encoded)
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    private static String asString(DataBuffer dataBuffer) {
+        var value = dataBuffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(dataBuffer);
+        return value;
+    }
+}
@@ -1,30 +1,53 @@
 package com.reactivespring.routes;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
 import com.reactivespring.exception.GlobalErrorHandler;
+import com.reactivespring.filter.RequestTimeoutWebFilter;
 import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
 import com.reactivespring.router.ReviewRouter;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest
-@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class})
+@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class,
+        RequestTimeoutWebFilter.class})
 @AutoConfigureWebTestClient
 public class ReviewsUnitTest {
 
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @MockBean
+    private ReviewStatsRepository reviewStatsRepository;
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -36,9 +59,10 @@ public class ReviewsUnitTest {
 
         var review = new Review(null, 1L, "Awesome Movie", 9.0);
 
-        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(
+        when(reviewReactiveRepository.insert(isA(Review.class))).thenReturn(
                 Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0))
         );
+        when(reviewStatsRepository.applyChange(anyLong(), anyLong(), any(), any())).thenReturn(Mono.empty());
 
         webTestClient.post()
                 .uri(REVIEWS_URL)
@@ -52,6 +76,336 @@ public class ReviewsUnitTest {
                     assert savedReview !=null;
                     assert savedReview.getReviewId() !=null;
                 });
+
+        verify(reviewStatsRepository).applyChange(1L, 1, null, 9.0);
+    }
+
+    @Test
+    void addReviewRebuildsStatsWhenTheirChangeFails() {
+
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+
+        when(reviewReactiveRepository.insert(isA(Review.class))).thenReturn(
+                Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0))
+        );
+        when(reviewStatsRepository.applyChange(anyLong(), anyLong(), any(), any()))
+                .thenReturn(Mono.error(new IllegalStateException("stats write failed")));
+        when(reviewStatsRepository.rebuild(1L)).thenReturn(
+                Mono.just(new ReviewStats(1L, 1, 1, 9.0, Map.of("9", 1L)))
+        );
+
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        verify(reviewStatsRepository).rebuild(1L);
+    }
+
+    @Test
+    void addReviewExistingReviewId() {
+
+        var review = new Review("abc", 1L, "Awesome Movie", 9.0);
+
+        when(reviewReactiveRepository.insert(isA(Review.class))).thenReturn(
+                Mono.error(new DuplicateKeyException("E11000 duplicate key error"))
+        );
+
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("Review already exists for the given Review Id");
+
+        verify(reviewStatsRepository, never()).applyChange(anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    void updateReview() {
+
+        when(reviewReactiveRepository.updateCommentAndRating("abc", "Good Movie", 7.0)).thenReturn(
+                Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0))
+        );
+        when(reviewStatsRepository.applyChange(anyLong(), anyLong(), any(), any())).thenReturn(Mono.empty());
+
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", "abc")
+                .bodyValue(new Review(null, 1L, "Good Movie", 7.0))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.comment").isEqualTo("Good Movie")
+                .jsonPath("$.rating").isEqualTo(7.0);
+
+        verify(reviewStatsRepository).applyChange(1L, 0, 9.0, 7.0);
+    }
+
+    @Test
+    void updateReviewNotFound() {
+
+        when(reviewReactiveRepository.updateCommentAndRating("abc", "Good Movie", 7.0)).thenReturn(Mono.empty());
+
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", "abc")
+                .bodyValue(new Review(null, 1L, "Good Movie", 7.0))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
+    @Test
+    void deleteReview() {
+
+        when(reviewReactiveRepository.findAndDeleteById("abc")).thenReturn(
+                Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0))
+        );
+        when(reviewStatsRepository.applyChange(anyLong(), anyLong(), any(), any())).thenReturn(Mono.empty());
+
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", "abc")
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        verify(reviewStatsRepository).applyChange(1L, -1, 9.0, null);
+    }
+
+    @Test
+    void getReviewStats() {
+
+        when(reviewStatsRepository.findById(1L)).thenReturn(
+                Mono.just(new ReviewStats(1L, 3, 2, 17.0, Map.of("9", 1L, "8", 1L)))
+        );
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.mean").isEqualTo(8.5)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+    }
+
+    @Test
+    void getReviewStatsWithoutReviews() {
+
+        when(reviewStatsRepository.findById(2L)).thenReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(0)
+                .jsonPath("$.mean").doesNotExist();
+    }
+
+    @Test
+    void rebuildReviewStats() {
+
+        when(reviewStatsRepository.rebuild(1L)).thenReturn(
+                Mono.just(new ReviewStats(1L, 3, 2, 17.0, Map.of("9", 1L, "8", 1L)))
+        );
+
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/stats/rebuild?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.mean").isEqualTo(8.5);
+    }
+
+    @Test
+    void getReviewsForSeveralMovies() {
+
+        when(reviewReactiveRepository.findByMovieInfoIds(Set.of(1L, 2L, 3L), 21)).thenReturn(
+                Flux.just(new Review("abc", 1L, "Awesome Movie", 9.0),
+                        new Review("def", 2L, "Excellent Movie", 8.0))
+        );
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=2,1,3")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].movieInfoId").isEqualTo(2)
+                .jsonPath("$[0].reviews[0].reviewId").isEqualTo("def")
+                .jsonPath("$[1].movieInfoId").isEqualTo(1)
+                .jsonPath("$[1].reviews.length()").isEqualTo(1)
+                .jsonPath("$[2].movieInfoId").isEqualTo(3)
+                .jsonPath("$[2].reviews").isEmpty()
+                .jsonPath("$[2].hasMore").isEqualTo(false);
+    }
+
+    @Test
+    void getReviewsForSeveralMoviesCapsEachMovie() {
+
+        // the cursor is closed once the first movie is full, the rest of it is never read
+        when(reviewReactiveRepository.findByMovieInfoIds(Set.of(1L, 2L, 3L), 3)).thenReturn(
+                Flux.just(new Review("abc", 1L, "Awesome Movie", 9.0),
+                                new Review("def", 1L, "Excellent Movie", 8.0),
+                                new Review("ghi", 1L, "Good Movie", 7.0))
+                        .concatWith(Flux.error(new AssertionError("read past the limit of movie 1")))
+        );
+        when(reviewReactiveRepository.findByMovieInfoIds(Set.of(2L, 3L), 3)).thenReturn(
+                Flux.just(new Review("jkl", 2L, "Awesome Movie", 9.0),
+                        new Review("mno", 2L, "Excellent Movie", 8.0),
+                        new Review("pqr", 3L, "Good Movie", 7.0))
+        );
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=1,2,3&limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$[0].reviews.length()").isEqualTo(2)
+                .jsonPath("$[0].hasMore").isEqualTo(true)
+                .jsonPath("$[1].reviews.length()").isEqualTo(2)
+                .jsonPath("$[1].hasMore").isEqualTo(false)
+                .jsonPath("$[2].reviews.length()").isEqualTo(1)
+                .jsonPath("$[2].hasMore").isEqualTo(false);
+    }
+
+    @Test
+    void getReviewsPage() {
+
+        when(reviewReactiveRepository.findAfter(1L, "abc", 2, 100)).thenReturn(
+                Flux.just(new Review("def", 1L, "Excellent Movie", 8.0),
+                        new Review("ghi", 1L, "Good Movie", 7.0))
+        );
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&after=abc&limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getReviewsUnpaged() {
+
+        when(reviewReactiveRepository.findAfter(1L, null, 0, 100)).thenReturn(
+                Flux.just(new Review("abc", 1L, "Awesome Movie", 9.0))
+        );
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getReviewsDefaultPage() {
+
+        when(reviewReactiveRepository.findAfter(1L, "abc", 100, 100)).thenReturn(
+                Flux.just(new Review("def", 1L, "Awesome Movie", 9.0))
+        );
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&after=abc")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getReviewsInvalidLimit() {
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?limit=abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("limit : must be a number");
+    }
+
+    @Test
+    void streamReviews() {
+
+        when(reviewReactiveRepository.findAfter(1L, null, 0, 100)).thenReturn(
+                Flux.just(new Review("abc", 1L, "Awesome Movie", 9.0),
+                        new Review("def", 1L, "Excellent Movie", 8.0))
+        );
+
+        var reviews = webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        StepVerifier.create(reviews)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void getTopReviews() {
+
+        when(reviewReactiveRepository.findTopRated(1L, 2)).thenReturn(
+                Flux.just(new Review("abc", 1L, "Awesome Movie", 9.0),
+                        new Review("def", 1L, "Excellent Movie", 8.0))
+        );
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/top?movieInfoId=1&limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[1].rating").isEqualTo(8.0);
+    }
+
+    @Test
+    void getTopReviewsWithoutMovieInfoId() {
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "/top")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfoId : must be present");
+    }
+
+    @Test
+    void getReviewsExceedsRequestTimeout() {
+
+        when(reviewReactiveRepository.findAfter(eq(1L), isNull(), anyInt(), anyInt())).thenReturn(Flux.never());
+
+        webTestClient.get()
+                .uri(REVIEWS_URL + "?movieInfoId=1")
+                .header(RequestTimeoutWebFilter.REQUEST_TIMEOUT_HEADER, "100")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
     }
 
     @Test
@@ -59,7 +413,7 @@ public class ReviewsUnitTest {
 
         var review = new Review(null, null, "Awesome Movie", -9.0);
 
-        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(
+        when(reviewReactiveRepository.insert(isA(Review.class))).thenReturn(
                 Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0))
         );
 
@@ -0,0 +1,150 @@
+package com.reactivespring.client;
+
+import com.reactivespring.deadline.Deadline;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * DataLoader style request coalescing: keys requested through {@link #load(Object)} within
+ * {@code window} (or until {@code maxBatchSize} keys are pending) are sent to the downstream
+ * as a single multi-key call, whichever request they come from. The call carries the latest
+ * deadline of those requests.
+ */
+@Slf4j
+public class BatchLoader<K, V> {
+
+    private final Function<Set<K>, Mono<Map<K, V>>> batchFunction;
+
+    private final int maxBatchSize;
+
+    private final Duration window;
+
+    private final Duration timeout;
+
+    private volatile Sinks.Many<PendingLoad<K, V>> pendingLoads;
+
+    /**
+     * A batch call that has not answered after {@code timeout} fails its loads with a {@link TimeoutException}.
+     */
+    public BatchLoader(Function<Set<K>, Mono<Map<K, V>>> batchFunction, int maxBatchSize, Duration window,
+                       Duration timeout) {
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.timeout = timeout;
+        start();
+    }
+
+    /**
+     * bufferTimeout does not wait for demand, so batches are queued while flatMap has all its batch calls
+     * running instead of failing the pipeline. Should it still fail, the loads it holds are failed and
+     * a new pipeline takes the next loads, otherwise every later load would hang.
+     */
+    private void start() {
+        var sink = Sinks.many().unicast().<PendingLoad<K, V>>onBackpressureBuffer();
+        sink.asFlux()
+                .bufferTimeout(maxBatchSize, window)
+                .onBackpressureBuffer()
+                // above flatMap, for the hook to only see the queued loads and not the batch calls' elements
+                .doOnDiscard(Object.class, BatchLoader::failDiscarded)
+                .flatMap(this::dispatch)
+                .subscribe(null, ex -> {
+                    log.error("Batch loading failed, restarting it", ex);
+                    start();
+                });
+        pendingLoads = sink;
+    }
+
+    /**
+     * Completes empty when the downstream has no value for the key.
+     */
+    public Mono<V> load(K key) {
+        return Deadline.current()
+                .flatMap(deadline -> Mono.create(sink -> enqueue(new PendingLoad<>(key, deadline, sink))));
+    }
+
+    private void enqueue(PendingLoad<K, V> pendingLoad) {
+        Sinks.EmitResult emitResult;
+        // load is called from many event-loop threads at once, spin until our emission goes through.
+        // A terminated sink is only seen while a failed pipeline is replaced.
+        do {
+            emitResult = pendingLoads.tryEmitNext(pendingLoad);
+        } while (emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED
+                || emitResult == Sinks.EmitResult.FAIL_TERMINATED
+                || emitResult == Sinks.EmitResult.FAIL_CANCELLED);
+        if (emitResult.isFailure()) {
+            pendingLoad.getSink().error(new IllegalStateException("Could not queue the load : " + emitResult));
+        }
+    }
+
+    private Mono<Void> dispatch(List<PendingLoad<K, V>> batch) {
+        var keys = batch.stream()
+                .map(PendingLoad::getKey)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        log.debug("Dispatching batch of {} keys", keys.size());
+
+        return Deadline.propagate(batchDeadline(batch), Mono.defer(() -> batchFunction.apply(keys)))
+                .timeout(timeout)
+                .defaultIfEmpty(Map.of())
+                .doOnNext(values -> batch.forEach(pendingLoad -> pendingLoad.complete(values.get(pendingLoad.getKey()))))
+                .doOnError(ex -> batch.forEach(pendingLoad -> pendingLoad.getSink().error(ex)))
+                .onErrorResume(ex -> Mono.empty())
+                // only a failing pipeline cancels its batch calls, their loads must not hang
+                .doOnCancel(() -> batch.forEach(BatchLoader::failDiscarded))
+                .then();
+    }
+
+    /**
+     * The latest deadline of the batch's requests, none when one of them has none.
+     */
+    private Optional<Deadline> batchDeadline(List<PendingLoad<K, V>> batch) {
+        var deadline = batch.get(0).getDeadline();
+        for (var pendingLoad : batch) {
+            if (pendingLoad.getDeadline().isEmpty()) {
+                return Optional.empty();
+            }
+            deadline = deadline.map(pendingLoad.getDeadline().get()::orLater);
+        }
+        return deadline;
+    }
+
+    private static void failDiscarded(Object discarded) {
+        if (discarded instanceof PendingLoad) {
+            ((PendingLoad<?, ?>) discarded).getSink().error(new IllegalStateException("Batch loading failed"));
+        } else if (discarded instanceof Collection) {
+            ((Collection<?>) discarded).forEach(BatchLoader::failDiscarded);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class PendingLoad<K, V> {
+
+        private final K key;
+        private final Optional<Deadline> deadline;
+        private final MonoSink<V> sink;
+
+        void complete(V value) {
+            if (value == null) {
+                sink.success();
+            } else {
+                sink.success(value);
+            }
+        }
+    }
+}
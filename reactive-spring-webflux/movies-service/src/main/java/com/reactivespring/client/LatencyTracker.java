@@ -0,0 +1,47 @@
+package com.reactivespring.client;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Keeps the latencies of the last {@code capacity} calls to answer percentile queries,
+ * the percentile is recomputed every {@code capacity / 10} recorded calls.
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final int recomputeEvery;
+
+    private int next;
+    private int count;
+    private int sinceRecompute;
+    private long[] sorted = new long[0];
+
+    public LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+        this.recomputeEvery = Math.max(1, capacity / 10);
+    }
+
+    public synchronized void record(Duration latency) {
+        samples[next] = latency.toNanos();
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        if (++sinceRecompute >= recomputeEvery) {
+            sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            sinceRecompute = 0;
+        }
+    }
+
+    /**
+     * Empty until enough calls were recorded for the percentile to be meaningful.
+     */
+    public synchronized Optional<Duration> percentile(double percentile) {
+        if (sorted.length < recomputeEvery) {
+            return Optional.empty();
+        }
+        var index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return Optional.of(Duration.ofNanos(sorted[Math.max(0, index)]));
+    }
+}
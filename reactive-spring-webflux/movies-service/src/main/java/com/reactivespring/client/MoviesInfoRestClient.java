@@ -1,32 +1,196 @@
 package com.reactivespring.client;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.config.ResilienceConfig;
+import com.reactivespring.deadline.Deadline;
 import com.reactivespring.domain.MovieInfo;
-import lombok.AllArgsConstructor;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
 @Component
 @RequiredArgsConstructor
 public class MoviesInfoRestClient {
 
     private final WebClient webClient;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
 
     @Value("${restClient.movieInfoUrl}")
     private String moviesInfoUrl;
 
+    @Value("${restClient.batch.maxSize:100}")
+    private int batchMaxSize;
+
+    @Value("${restClient.batch.window:10ms}")
+    private Duration batchWindow;
+
+    @Value("${restClient.batch.timeout:5s}")
+    private Duration batchTimeout;
+
+    @Value("${restClient.movieInfoCache.maxSize:10000}")
+    private long cacheMaxSize;
+
+    @Value("${restClient.movieInfoCache.ttl:5m}")
+    private Duration cacheTtl;
+
+    @Value("${restClient.movieInfoCache.maxStale:1h}")
+    private Duration cacheMaxStale;
+
+    private AsyncLoadingCache<String, MovieInfo> movieInfoCache;
+
+    private BatchLoader<String, MovieInfo> movieInfoLoader;
+
+    private final SingleFlight<String, MovieInfo> movieInfoFlight = new SingleFlight<>();
+
+    private CircuitBreaker circuitBreaker;
+
+    private Bulkhead bulkhead;
+
+    @PostConstruct
+    void initResilience() {
+        circuitBreaker = circuitBreakerRegistry.circuitBreaker(ResilienceConfig.MOVIES_INFO);
+        bulkhead = bulkheadRegistry.bulkhead(ResilienceConfig.MOVIES_INFO);
+    }
+
+    @PostConstruct
+    void initCache() {
+        // entries older than ttl are still served while a single background refresh runs,
+        // they are only dropped once they are older than ttl + maxStale
+        movieInfoCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .refreshAfterWrite(cacheTtl)
+                .expireAfterWrite(cacheTtl.plus(cacheMaxStale))
+                .recordStats()
+                .buildAsync((movieId, executor) -> fetchMovieInfo(movieId).toFuture());
+        CaffeineCacheMetrics.monitor(meterRegistry, movieInfoCache.synchronous(), "movieInfo");
+    }
+
+    @PostConstruct
+    void initBatchLoader() {
+        movieInfoLoader = new BatchLoader<>(this::retrieveCachedMovieInfos, batchMaxSize, batchWindow,
+                batchTimeout);
+    }
+
+    /**
+     * Served from the in-process cache, completes empty when the movie info service has no content.
+     * Cached entries keep being served while the circuit breaker is open, only misses fail fast.
+     * A miss is loaded with the deadline of the request that missed, refreshes carry none.
+     */
     public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+        return Deadline.current()
+                .flatMap(deadline -> Mono.fromFuture(movieInfoCache.get(movieId,
+                        (missingId, executor) -> Deadline.propagate(deadline, fetchMovieInfo(missingId)).toFuture())));
+    }
+
+    private Mono<Map<String, MovieInfo>> retrieveCachedMovieInfos(Set<String> movieIds) {
+        return Deadline.current()
+                .flatMap(deadline -> Mono.fromFuture(movieInfoCache.getAll(movieIds, (missingIds, executor) -> {
+                    var ids = new ArrayList<String>();
+                    missingIds.forEach(ids::add);
+                    return Deadline.propagate(deadline, retrieveMovieInfos(ids)
+                                    .collectMap(MovieInfo::getMovieInfoId, Function.identity()))
+                            .toFuture();
+                })));
+    }
+
+    private Mono<MovieInfo> fetchMovieInfo(String movieId) {
+        // the cache already coalesces concurrent misses, this also covers refreshes racing with misses
+        return movieInfoFlight.executeMono(movieId, () -> fetchMovieInfoFromService(movieId));
+    }
+
+    private Mono<MovieInfo> fetchMovieInfoFromService(String movieId) {
+        return retrieveMovieInfoResponse(movieId)
+                .bodyToMono(MovieInfo.class)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .log();
+    }
+
+    /**
+     * The movie info JSON exactly as the movie info service sent it, neither decoded nor cached.
+     * The caller owns the buffers and has to release them.
+     */
+    public Flux<DataBuffer> retrieveRawMovieInfo(String movieId) {
+        return retrieveMovieInfoResponse(movieId)
+                .bodyToFlux(DataBuffer.class)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    private WebClient.ResponseSpec retrieveMovieInfoResponse(String movieId) {
 
         var url = moviesInfoUrl.concat("/{id}");
 
         return webClient.get()
                 .uri(url, movieId)
                 .retrieve()
-                .bodyToMono(MovieInfo.class)
-                .log();
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    if (clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
+                        return Mono.error(new MoviesInfoClientException(
+                                "There is no MovieInfo available for the passed in Id : " + movieId,
+                                clientResponse.rawStatusCode()));
+                    }
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoClientException(
+                                    responseMessage, clientResponse.rawStatusCode())));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(new MoviesInfoServerException(
+                                "Server Exception in MoviesInfoService : " + responseMessage))));
+    }
+
+    /**
+     * Coalesces concurrent cache misses into multi-id calls, completes empty for unknown ids.
+     */
+    public Mono<MovieInfo> retrieveMovieInfoBatched(String movieId) {
+        return movieInfoLoader.load(movieId);
+    }
+
+    public Flux<MovieInfo> retrieveMovieInfos(Collection<String> movieIds) {
+
+        var url = UriComponentsBuilder.fromHttpUrl(moviesInfoUrl)
+                .queryParam("ids", String.join(",", movieIds))
+                .buildAndExpand().toUriString();
+
+        return webClient.get()
+                .uri(url)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(new MoviesInfoClientException(
+                                responseMessage, clientResponse.rawStatusCode()))))
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(new MoviesInfoServerException(
+                                "Server Exception in MoviesInfoService : " + responseMessage))))
+                .bodyToFlux(MovieInfo.class)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
     }
 
 }
@@ -0,0 +1,55 @@
+package com.reactivespring.client;
+
+/**
+ * Caps retries (and hedged attempts) to a fraction of the regular traffic so that they cannot
+ * amplify an outage: every request deposits {@code ratio} of a token, every extra attempt
+ * withdraws a whole one. {@code minPerSecond} extra attempts are always allowed so that
+ * low traffic services can still retry.
+ */
+public class RetryBudget {
+
+    // balances are kept in thousandths of a token so that ratios like 0.1 add up exactly
+    private static final long TOKEN = 1000;
+
+    private final long depositPerRequest;
+    private final long minPerSecond;
+    private final long maxBalance;
+
+    private long balance;
+    private long reserve;
+    private long lastRefillNanos = System.nanoTime();
+
+    public RetryBudget(double ratio, double minPerSecond) {
+        this.depositPerRequest = Math.round(ratio * TOKEN);
+        this.minPerSecond = Math.round(minPerSecond * TOKEN);
+        // do not let a long quiet period build up a retry storm
+        this.maxBalance = Math.max(TOKEN, depositPerRequest * 1000);
+        this.reserve = this.minPerSecond;
+    }
+
+    public synchronized void recordRequest() {
+        balance = Math.min(maxBalance, balance + depositPerRequest);
+    }
+
+    public synchronized boolean tryAcquire() {
+        refillReserve();
+        if (balance >= TOKEN) {
+            balance -= TOKEN;
+            return true;
+        }
+        if (reserve >= TOKEN) {
+            reserve -= TOKEN;
+            return true;
+        }
+        return false;
+    }
+
+    private void refillReserve() {
+        var now = System.nanoTime();
+        var refill = (now - lastRefillNanos) * minPerSecond / 1_000_000_000L;
+        if (refill > 0) {
+            reserve = Math.min(minPerSecond, reserve + refill);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -1,34 +1,276 @@
 package com.reactivespring.client;
 
+import com.reactivespring.config.ResilienceConfig;
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
-import lombok.AllArgsConstructor;
+import com.reactivespring.exception.ReviewsClientException;
+import com.reactivespring.exception.ReviewsServerException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Autowired;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
+@Slf4j
 public class ReviewRestClient {
 
     private final WebClient webClient;
+    private final RetryBudget retryBudget;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
 
     @Value("${restClient.reviewsUrl}")
     private String reviewsUrl;
 
+    @Value("${restClient.batch.maxSize:100}")
+    private int batchMaxSize;
+
+    @Value("${restClient.batch.window:10ms}")
+    private Duration batchWindow;
+
+    @Value("${restClient.batch.timeout:5s}")
+    private Duration batchTimeout;
+
+    @Value("${restClient.reviews.pageSize:1000}")
+    private int pageSize;
+
+    @Value("${restClient.reviews.timeout:2s}")
+    private Duration timeout;
+
+    @Value("${restClient.reviews.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    @Value("${restClient.reviews.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${restClient.reviews.hedge.minDelay:20ms}")
+    private Duration hedgeMinDelay;
+
+    @Value("${restClient.reviews.hedge.initialDelay:200ms}")
+    private Duration hedgeInitialDelay;
+
+    @Value("${restClient.reviews.retry.maxRetries:2}")
+    private int maxRetries;
+
+    @Value("${restClient.reviews.retry.backoff:50ms}")
+    private Duration retryBackoff;
+
+    @Value("${restClient.reviews.retry.maxBackoff:500ms}")
+    private Duration retryMaxBackoff;
+
+    private final SingleFlight<String, Review> reviewsFlight = new SingleFlight<>();
+
+    private final LatencyTracker latencyTracker = new LatencyTracker(1000);
+
+    private BatchLoader<String, List<Review>> reviewsLoader;
+
+    private CircuitBreaker circuitBreaker;
+
+    private Bulkhead bulkhead;
+
+    @PostConstruct
+    void initResilience() {
+        circuitBreaker = circuitBreakerRegistry.circuitBreaker(ResilienceConfig.REVIEWS);
+        bulkhead = bulkheadRegistry.bulkhead(ResilienceConfig.REVIEWS);
+    }
+
+    @PostConstruct
+    void initBatchLoader() {
+        reviewsLoader = new BatchLoader<>(movieIds -> retrieveReviews(movieIds)
+                .collect(Collectors.groupingBy(review -> String.valueOf(review.getMovieInfoId()))),
+                batchMaxSize, batchWindow, batchTimeout);
+    }
+
+    /**
+     * Concurrent calls for the same movie share one downstream call.
+     */
     public Flux<Review> retrieveReviews(String movieId) {
+        return reviewsFlight.execute(movieId, () -> retrieveReviews(List.of(movieId)));
+    }
+
+    /**
+     * Coalesces concurrent lookups into multi-id calls, emits an empty list for movies without reviews.
+     */
+    public Mono<List<Review>> retrieveReviewsBatched(String movieId) {
+        return reviewsLoader.load(movieId)
+                .defaultIfEmpty(List.of());
+    }
+
+    public Flux<Review> retrieveReviews(Collection<String> movieIds) {
+        return resilient(() -> fetchReviews(movieIds, MediaType.APPLICATION_JSON));
+    }
+
+    /**
+     * Streams the reviews of a movie as the reviews service produces them, without buffering them.
+     * Elements may already have been emitted when a call fails, so this path is neither retried nor hedged.
+     */
+    public Flux<Review> streamReviews(String movieId) {
+        return fetchReviews(List.of(movieId), MediaType.APPLICATION_NDJSON)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    /**
+     * The JSON array of the movie's reviews exactly as the reviews service sent it, completes empty
+     * when there are none. Like {@link #streamReviews(String)} this path is neither retried nor hedged,
+     * as buffers may already have been handed out. The caller owns the buffers and has to release them.
+     */
+    public Flux<DataBuffer> retrieveRawReviews(String movieId) {
+        return retrieveReviewsResponse(List.of(movieId), MediaType.APPLICATION_JSON)
+                .bodyToFlux(DataBuffer.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, ex -> Flux.empty())
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    /**
+     * Each attempt is hedged and timed out, failed attempts are retried with jittered backoff.
+     * Hedges and retries are both paid from the shared {@link RetryBudget}. Attempts are collected
+     * before they are emitted so that a retried attempt cannot emit duplicate reviews.
+     * The circuit breaker and bulkhead see the call as a whole, after retries, and fail fast with
+     * {@link io.github.resilience4j.circuitbreaker.CallNotPermittedException} or
+     * {@link io.github.resilience4j.bulkhead.BulkheadFullException} while the reviews service is degraded.
+     */
+    private Flux<Review> resilient(Supplier<Flux<Review>> call) {
+        return Mono.defer(() -> hedged(() -> timed(call.get().collectList()))
+                        .timeout(timeout))
+                .retryWhen(Retry.backoff(maxRetries, retryBackoff)
+                        .maxBackoff(retryMaxBackoff)
+                        .jitter(0.5)
+                        .filter(this::isRetryable)
+                        // runs once maxRetries is checked, so only a retry that is made spends a token
+                        .doBeforeRetryAsync(retrySignal -> retryBudget.tryAcquire()
+                                ? Mono.fromRunnable(() -> log.warn("Retrying reviews call after : {}",
+                                        retrySignal.failure().getMessage()))
+                                : Mono.error(retrySignal.failure()))
+                        .onRetryExhaustedThrow((retrySpec, retrySignal) -> retrySignal.failure()))
+                // once per call, outside the retries, or every retry would earn budget for the next one
+                .doOnSubscribe(subscription -> retryBudget.recordRequest())
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .flatMapIterable(reviews -> reviews);
+    }
+
+    private Mono<List<Review>> hedged(Supplier<Mono<List<Review>>> attempt) {
+        if (!hedgeEnabled) {
+            return attempt.get();
+        }
+        var hedgeDelay = latencyTracker.percentile(hedgePercentile)
+                .map(percentileDelay -> percentileDelay.compareTo(hedgeMinDelay) > 0 ? percentileDelay : hedgeMinDelay)
+                .orElse(hedgeInitialDelay);
+        // the hedge is only sent while the first attempt is still running and the budget allows it
+        var primaryFailed = Sinks.empty();
+        var primary = attempt.get()
+                .doOnError(ex -> primaryFailed.tryEmitEmpty());
+        var hedge = Mono.delay(hedgeDelay)
+                .takeUntilOther(primaryFailed.asMono())
+                .flatMap(tick -> retryBudget.tryAcquire() ? attempt.get() : Mono.<List<Review>>empty());
+        // a failed attempt does not end the call while the other one may still answer,
+        // when neither does the call fails with the first attempt's error
+        return Mono.firstWithValue(primary, hedge)
+                .onErrorMap(NoSuchElementException.class, ex -> Exceptions.unwrapMultiple(ex.getCause()).get(0));
+    }
+
+    private Mono<List<Review>> timed(Mono<List<Review>> attempt) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return attempt.doOnSuccess(reviews -> latencyTracker.record(Duration.ofNanos(System.nanoTime() - start)));
+        });
+    }
+
+    private boolean isRetryable(Throwable ex) {
+        // only idempotent GETs go through here, so server errors, timeouts and connection failures can be retried
+        return ex instanceof ReviewsServerException
+                || ex instanceof TimeoutException
+                || ex instanceof WebClientRequestException;
+    }
+
+    private Flux<Review> fetchReviews(Collection<String> movieIds, MediaType mediaType) {
+        var responseSpec = retrieveReviewsResponse(movieIds, mediaType);
+        // several movies are answered grouped by movie (as JSON), each movie with its first reviews
+        var reviews = movieIds.size() > 1 && mediaType.equals(MediaType.APPLICATION_JSON)
+                ? responseSpec.bodyToFlux(MovieReviews.class).flatMapSequential(this::withRemainingReviews)
+                : responseSpec.bodyToFlux(Review.class);
+        // no reviews for a movie is not an error for the callers
+        return reviews.onErrorResume(WebClientResponseException.NotFound.class, ex -> Flux.empty());
+    }
+
+    /**
+     * A movie's first reviews followed by the ones the reviews service capped, paged after the last one
+     * until a page comes back empty. Pages are not assumed full at {@code pageSize}, as the reviews
+     * service may cap them lower.
+     */
+    private Flux<Review> withRemainingReviews(MovieReviews movieReviews) {
+        var reviews = movieReviews.getReviews();
+        if (!movieReviews.isHasMore() || reviews.isEmpty()) {
+            return Flux.fromIterable(reviews);
+        }
+        var movieId = String.valueOf(movieReviews.getMovieInfoId());
+        return Mono.just(reviews)
+                .expand(page -> page.isEmpty()
+                        ? Mono.empty()
+                        : fetchReviewsPage(movieId, page.get(page.size() - 1).getReviewId()))
+                .flatMapIterable(page -> page);
+    }
+
+    private Mono<List<Review>> fetchReviewsPage(String movieId, String afterReviewId) {
         var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
                 .queryParam("movieInfoId", movieId)
+                .queryParam("after", afterReviewId)
+                .queryParam("limit", pageSize)
                 .buildAndExpand().toUriString();
+        return retrieveReviewsResponse(url, MediaType.APPLICATION_JSON)
+                .bodyToFlux(Review.class)
+                .collectList()
+                .onErrorResume(WebClientResponseException.NotFound.class, ex -> Mono.just(List.of()));
+    }
+
+    private WebClient.ResponseSpec retrieveReviewsResponse(Collection<String> movieIds, MediaType mediaType) {
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .queryParam("movieInfoId", String.join(",", movieIds))
+                .buildAndExpand().toUriString();
+        return retrieveReviewsResponse(url, mediaType);
+    }
 
+    private WebClient.ResponseSpec retrieveReviewsResponse(String url, MediaType mediaType) {
         return webClient.get()
                 .uri(url)
+                .accept(mediaType)
                 .retrieve()
-                .bodyToFlux(Review.class);
-
+                .onStatus(status -> status.is4xxClientError() && status != HttpStatus.NOT_FOUND,
+                        clientResponse -> clientResponse.bodyToMono(String.class)
+                                .flatMap(responseMessage -> Mono.error(new ReviewsClientException(responseMessage))))
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> clientResponse.bodyToMono(String.class)
+                        .flatMap(responseMessage -> Mono.error(new ReviewsServerException(
+                                "Server Exception in ReviewsService : " + responseMessage))));
     }
 
 }
@@ -0,0 +1,47 @@
+package com.reactivespring.client;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Concurrent callers for the same key share one in-flight downstream call instead of each
+ * issuing their own. The shared call replays what it has emitted so far, so a caller joining
+ * after the first element still sees the whole result. It is reference counted: it is only
+ * cancelled once every caller has cancelled, and the next caller after it terminates starts
+ * a fresh call.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Flux<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Flux<V> execute(K key, Supplier<? extends Flux<V>> call) {
+        return Flux.defer(() -> inFlight.computeIfAbsent(key, k -> newFlight(k, call)));
+    }
+
+    public Mono<V> executeMono(K key, Supplier<? extends Mono<V>> call) {
+        return execute(key, () -> call.get().flux())
+                .singleOrEmpty();
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private Flux<V> newFlight(K key, Supplier<? extends Flux<V>> call) {
+        var flight = new AtomicReference<Flux<V>>();
+        // only remove our own entry, a newer flight may already be registered for the key. Removed before
+        // the result is handed out, so a caller reacting to it starts a fresh call instead of the replay.
+        Runnable land = () -> inFlight.remove(key, flight.get());
+        flight.set(Flux.defer(call)
+                .doOnTerminate(land)
+                .doOnCancel(land)
+                .replay()
+                .refCount());
+        return flight.get();
+    }
+}
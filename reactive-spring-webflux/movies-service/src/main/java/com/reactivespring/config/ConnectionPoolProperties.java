@@ -0,0 +1,35 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "rest-client.pool")
+public class ConnectionPoolProperties {
+
+    /**
+     * Negotiate cleartext HTTP/2 (h2c) with the downstream services, falling back to HTTP/1.1.
+     */
+    private boolean h2c = false;
+
+    /**
+     * Export the reactor.netty.connection.provider.* gauges (active, idle, pending, total connections).
+     */
+    private boolean metrics = true;
+
+    private Pool movieInfo = new Pool();
+
+    private Pool reviews = new Pool();
+
+    @Data
+    public static class Pool {
+        private int maxConnections = 100;
+        private int pendingAcquireMaxCount = 500;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictInBackground = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,85 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.ReviewsClientException;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * One circuit breaker and one bulkhead per downstream service, created on first use by the clients
+ * with the names {@link #MOVIES_INFO} and {@link #REVIEWS}.
+ */
+@Configuration
+@Slf4j
+public class ResilienceConfig {
+
+    public static final String MOVIES_INFO = "movies-info";
+    public static final String REVIEWS = "reviews";
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(
+            MeterRegistry meterRegistry,
+            @Value("${restClient.circuitBreaker.failureRateThreshold:50}") float failureRateThreshold,
+            @Value("${restClient.circuitBreaker.slowCallDurationThreshold:2s}") Duration slowCallDurationThreshold,
+            @Value("${restClient.circuitBreaker.slidingWindowSize:20}") int slidingWindowSize,
+            @Value("${restClient.circuitBreaker.minimumNumberOfCalls:10}") int minimumNumberOfCalls,
+            @Value("${restClient.circuitBreaker.waitDurationInOpenState:10s}") Duration waitDurationInOpenState,
+            @Value("${restClient.circuitBreaker.permittedCallsInHalfOpenState:3}") int permittedCallsInHalfOpenState) {
+
+        var circuitBreakerConfig = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(slowCallDurationThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(waitDurationInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // a 4xx is an answer from a healthy service
+                .ignoreExceptions(MoviesInfoClientException.class, ReviewsClientException.class)
+                .build();
+
+        var circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
+        circuitBreakerRegistry.getEventPublisher()
+                .onEntryAdded(entryAddedEvent -> {
+                    var circuitBreaker = entryAddedEvent.getAddedEntry();
+                    circuitBreaker.getEventPublisher().onStateTransition(event -> {
+                        log.warn("Circuit breaker {} : {}", event.getCircuitBreakerName(), event.getStateTransition());
+                        meterRegistry.counter("resilience4j.circuitbreaker.state.transitions",
+                                        "name", event.getCircuitBreakerName(),
+                                        "from", event.getStateTransition().getFromState().name().toLowerCase(),
+                                        "to", event.getStateTransition().getToState().name().toLowerCase())
+                                .increment();
+                    });
+                });
+        // resilience4j.circuitbreaker.state, .calls, .failure.rate ... gauges per breaker
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        return circuitBreakerRegistry;
+    }
+
+    @Bean
+    public BulkheadRegistry bulkheadRegistry(
+            MeterRegistry meterRegistry,
+            @Value("${restClient.bulkhead.maxConcurrentCalls:100}") int maxConcurrentCalls) {
+
+        var bulkheadConfig = BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                // reject at once instead of queueing behind a degraded service
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+
+        var bulkheadRegistry = BulkheadRegistry.of(bulkheadConfig);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+        return bulkheadRegistry;
+    }
+}
@@ -1,14 +1,93 @@
 package com.reactivespring.config;
 
+import com.reactivespring.client.RetryBudget;
+import com.reactivespring.deadline.Deadline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
 
 @Configuration
+@EnableConfigurationProperties(ConnectionPoolProperties.class)
 public class WebClientConfig {
 
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider connectionProvider(ConnectionPoolProperties poolProperties,
+                                                 @Value("${restClient.movieInfoUrl}") String movieInfoUrl,
+                                                 @Value("${restClient.reviewsUrl}") String reviewsUrl) {
+        // one pool per downstream host, so a slow service cannot starve the connections of the other one
+        return ConnectionProvider.builder("movies-service")
+                .metrics(poolProperties.isMetrics())
+                .forRemoteHost(remoteAddress(movieInfoUrl),
+                        spec -> configure(spec, poolProperties.getMovieInfo(), poolProperties.isMetrics()))
+                .forRemoteHost(remoteAddress(reviewsUrl),
+                        spec -> configure(spec, poolProperties.getReviews(), poolProperties.isMetrics()))
+                .build();
+    }
+
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClient webClient(WebClient.Builder builder, ConnectionProvider connectionProvider,
+                               ConnectionPoolProperties poolProperties) {
+        var httpClient = HttpClient.create(connectionProvider)
+                .protocol(poolProperties.isH2c()
+                        ? new HttpProtocol[]{HttpProtocol.H2C, HttpProtocol.HTTP11}
+                        : new HttpProtocol[]{HttpProtocol.HTTP11});
+
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(deadlinePropagation())
+                .build();
+    }
+
+    /**
+     * Forwards what is left of the request's deadline, so downstream services stop working on
+     * requests the caller has already given up on. Calls made outside of a request, such as
+     * cache refreshes, carry no deadline.
+     */
+    private static ExchangeFilterFunction deadlinePropagation() {
+        return (request, next) -> Deadline.current()
+                .flatMap(deadline -> next.exchange(deadline
+                        .map(presentDeadline -> ClientRequest.from(request)
+                                .header(Deadline.HEADER, String.valueOf(presentDeadline.remaining().toMillis()))
+                                .build())
+                        .orElse(request)));
+    }
+
+    /**
+     * Shared by all downstream clients, retries towards any service count against the same budget.
+     */
+    @Bean
+    public RetryBudget retryBudget(@Value("${restClient.retryBudget.ratio:0.1}") double ratio,
+                                   @Value("${restClient.retryBudget.minPerSecond:10}") double minPerSecond) {
+        return new RetryBudget(ratio, minPerSecond);
+    }
+
+    private static void configure(ConnectionProvider.HostSpecificSpec spec, ConnectionPoolProperties.Pool pool,
+                                  boolean metrics) {
+        spec.maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictInBackground())
+                .metrics(metrics);
+    }
+
+    private static SocketAddress remoteAddress(String url) {
+        var uri = URI.create(url);
+        var port = uri.getPort() != -1 ? uri.getPort() : ("https".equals(uri.getScheme()) ? 443 : 80);
+        // reactor netty keys its pools by the unresolved address of the request uri
+        return InetSocketAddress.createUnresolved(uri.getHost(), port);
     }
 }
@@ -2,30 +2,155 @@ package com.reactivespring.controller;
 
 import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewRestClient;
+import com.reactivespring.deadline.Deadline;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieStreamEvent;
+import com.reactivespring.domain.Review;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.AllArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 @RestController
 @RequestMapping("/v1/movies")
 @AllArgsConstructor
 public class MoviesController {
 
+    private static final int REVIEW_PREFETCH = 32;
+
     private final MoviesInfoRestClient moviesInfoRestClient;
     private final ReviewRestClient reviewRestClient;
 
     @GetMapping("/{id}")
     public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId) {
-        return moviesInfoRestClient.retrieveMovieInfo(movieId)
-                .flatMap( movieInfo -> {
-                    var reviewListMono = reviewRestClient.retrieveReviews(movieId)
-                            .collectList();
+        // the review call only needs the path id, so both downstream calls are subscribed at once.
+        // zip cancels the in-flight review call as soon as the movie info call fails (404 included).
+        return Deadline.current()
+                .flatMap(deadline -> movieWithinDeadline(
+                        moviesInfoRestClient.retrieveMovieInfo(movieId),
+                        reviewRestClient.retrieveReviews(movieId).collectList(),
+                        deadline));
+    }
+
+    /**
+     * Streams the movie info first and then one event per review, so memory per request stays
+     * bounded whatever the number of reviews.
+     */
+    @GetMapping(value = "/{id}/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<MovieStreamEvent> streamMovieById(@PathVariable("id") String movieId) {
+        var movieInfoEvents = moviesInfoRestClient.retrieveMovieInfo(movieId)
+                .map(MovieStreamEvent::of)
+                .flux();
+        var reviewEvents = reviewRestClient.streamReviews(movieId)
+                .onErrorResume(MoviesController::isDegraded, ex -> Flux.empty())
+                .map(MovieStreamEvent::of);
+
+        // both calls start at once; reviews arriving before the movie info wait in a queue of at most
+        // REVIEW_PREFETCH elements, beyond that demand stops and backpressure reaches the reviews service
+        return Flux.mergeSequential(REVIEW_PREFETCH, movieInfoEvents, reviewEvents);
+    }
+
+    /**
+     * Same JSON as {@link #retrieveMovieById(String)}, but the downstream payloads are spliced into
+     * the response as received instead of being decoded and encoded again. Movie infos are fetched
+     * from the movie info service on every call, the cache only holds decoded ones.
+     */
+    @GetMapping(value = "/{id}/raw", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<DataBuffer> retrieveRawMovieById(@PathVariable("id") String movieId, ServerHttpResponse response) {
+        var pendingBuffers = new PendingBuffers();
+        return Deadline.current()
+                .flatMap(deadline -> aggregateWithinDeadline(
+                        pendingBuffers.track(moviesInfoRestClient.retrieveRawMovieInfo(movieId))
+                                .collectList()
+                                .filter(movieInfo -> !movieInfo.isEmpty()),
+                        pendingBuffers.track(reviewRestClient.retrieveRawReviews(movieId))
+                                .collectList(),
+                        deadline,
+                        (movieInfo, reviewList) -> rawMovie(response.bufferFactory(), movieInfo, reviewList)))
+                .flatMapMany(Function.identity())
+                .doOnNext(pendingBuffers::handedOver)
+                .doFinally(signalType -> pendingBuffers.releaseAll());
+    }
+
+    @GetMapping
+    public Flux<Movie> retrieveMovies(@RequestParam("ids") List<String> movieIds) {
+        // every id goes through the batch loaders, so the whole page costs one call per downstream.
+        // flatMapSequential keeps the requested order, unknown ids are skipped.
+        return Deadline.current()
+                .flatMapMany(deadline -> Flux.fromIterable(movieIds)
+                        .flatMapSequential(movieId -> movieWithinDeadline(
+                                moviesInfoRestClient.retrieveMovieInfoBatched(movieId),
+                                reviewRestClient.retrieveReviewsBatched(movieId),
+                                deadline)));
+    }
+
+    private Mono<Movie> movieWithinDeadline(Mono<MovieInfo> movieInfoMono, Mono<List<Review>> reviewListMono,
+                                            Optional<Deadline> deadline) {
+        return aggregateWithinDeadline(movieInfoMono, reviewListMono, deadline,
+                (movieInfo, reviewList) -> new Movie(movieInfo, reviewList.orElse(List.of()), reviewList.isEmpty()));
+    }
+
+    /**
+     * The movie info is required and fails the request with a {@link TimeoutException} once the
+     * deadline has passed. Reviews are optional: when they are still missing at that point, or
+     * while the reviews service is shed by its circuit breaker or bulkhead, they are passed on as
+     * empty for the movie to be marked as partial rather than failing the whole request. Shared downstream calls (cache loads, batches) are not
+     * cancelled with the request and still complete for the other callers.
+     */
+    private static <I, R, T> Mono<T> aggregateWithinDeadline(Mono<I> movieInfoMono, Mono<R> reviewListMono,
+                                                           Optional<Deadline> deadline,
+                                                           BiFunction<I, Optional<R>, T> combinator) {
+        var optionalReviewListMono = withinDeadline(reviewListMono.map(Optional::of), deadline)
+                .onErrorResume(ex -> ex instanceof TimeoutException || isDegraded(ex), ex -> Mono.just(Optional.empty()));
+
+        return Mono.zip(withinDeadline(movieInfoMono, deadline), optionalReviewListMono, combinator);
+    }
+
+    private static <T> Mono<T> withinDeadline(Mono<T> call, Optional<Deadline> deadline) {
+        return deadline
+                .map(presentDeadline -> Mono.defer(() -> call.timeout(presentDeadline.remaining())))
+                .orElse(call);
+    }
+
+    private static boolean isDegraded(Throwable ex) {
+        return ex instanceof CallNotPermittedException || ex instanceof BulkheadFullException;
+    }
+
+    /**
+     * {@code {"movieInfo":...,"reviewList":...}} around the unchanged downstream buffers.
+     */
+    private static Flux<DataBuffer> rawMovie(DataBufferFactory bufferFactory, List<DataBuffer> movieInfo,
+                                             Optional<List<DataBuffer>> reviewList) {
+        var reviews = reviewList
+                .filter(buffers -> !buffers.isEmpty())
+                .orElseGet(() -> List.of(wrap(bufferFactory, "[]")));
+        return Flux.concat(
+                Flux.just(wrap(bufferFactory, "{\"movieInfo\":")),
+                Flux.fromIterable(movieInfo),
+                Flux.just(wrap(bufferFactory, ",\"reviewList\":")),
+                Flux.fromIterable(reviews),
+                Flux.just(wrap(bufferFactory, reviewList.isPresent() ? "}" : ",\"partial\":true}")));
+    }
 
-                    return reviewListMono.map(reviews -> new Movie(movieInfo, reviews));
-                });
+    private static DataBuffer wrap(DataBufferFactory bufferFactory, String json) {
+        return bufferFactory.wrap(json.getBytes(StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,34 @@
+package com.reactivespring.controller;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Downstream buffers a request has received but not handed to the response yet. Operators such as
+ * {@code zip} drop values without releasing them, so whatever is still pending when the request
+ * terminates is released here instead of leaking pooled memory.
+ */
+class PendingBuffers {
+
+    private final Set<DataBuffer> pending = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    Flux<DataBuffer> track(Flux<DataBuffer> buffers) {
+        return buffers.doOnNext(pending::add);
+    }
+
+    void handedOver(DataBuffer buffer) {
+        pending.remove(buffer);
+    }
+
+    void releaseAll() {
+        synchronized (pending) {
+            pending.forEach(DataBufferUtils::release);
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.reactivespring.deadline;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The point in time by which a request has to be answered. It is carried in the Reactor
+ * {@code Context} of the request and forwarded downstream as the remaining budget in milliseconds
+ * in the {@link #HEADER} header, so clock skew between services does not matter.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class Deadline {
+
+    public static final String HEADER = "X-Request-Timeout";
+
+    private final long expiresAtNanos;
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * The deadline of the current request, empty outside of a request.
+     */
+    public static Mono<Optional<Deadline>> current() {
+        return Mono.deferContextual(context -> Mono.just(context.getOrEmpty(Deadline.class)));
+    }
+
+    /**
+     * Subscribes {@code call} with the request's deadline. Calls shared between requests, such as cache
+     * loads and batches, are subscribed outside of any request and would otherwise carry none.
+     */
+    public static <T> Mono<T> propagate(Optional<Deadline> deadline, Mono<T> call) {
+        return deadline
+                .map(presentDeadline -> call.contextWrite(context -> context.put(Deadline.class, presentDeadline)))
+                .orElse(call);
+    }
+
+    /**
+     * The later of the two, a call made for both requests has to be able to answer either of them.
+     */
+    public Deadline orLater(Deadline other) {
+        return other.expiresAtNanos - expiresAtNanos > 0 ? other : this;
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+}
@@ -0,0 +1,46 @@
+package com.reactivespring.deadline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Starts the clock of every request: the caller's {@link Deadline#HEADER} budget, or the default
+ * when there is none, capped at {@code deadline.max}.
+ */
+@Component
+@Slf4j
+public class DeadlineWebFilter implements WebFilter {
+
+    @Value("${deadline.default:3s}")
+    private Duration defaultTimeout;
+
+    @Value("${deadline.max:10s}")
+    private Duration maxTimeout;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var timeout = requestedTimeout(exchange.getRequest().getHeaders().getFirst(Deadline.HEADER));
+        var deadline = Deadline.after(timeout.compareTo(maxTimeout) > 0 ? maxTimeout : timeout);
+        return chain.filter(exchange)
+                .contextWrite(context -> context.put(Deadline.class, deadline));
+    }
+
+    private Duration requestedTimeout(String header) {
+        if (header == null) {
+            return defaultTimeout;
+        }
+        try {
+            return Duration.ofMillis(Math.max(0, Long.parseLong(header.trim())));
+        } catch (NumberFormatException ex) {
+            log.debug("Ignoring invalid {} header : {}", Deadline.HEADER, header);
+            return defaultTimeout;
+        }
+    }
+}
@@ -1,4 +1,791 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.config.ResilienceConfig;
+import com.reactivespring.deadline.Deadline;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieStreamEvent;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.cloud.contract.wiremock.WireMockConfigurationCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(
+        properties = {
+                "restClient.movieInfoUrl=http://localhost:8084/v1/movieinfos",
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "restClient.reviews.hedge.initialDelay=300ms",
+                // every call stalling past 300ms is hedged, whatever the latencies of earlier tests
+                "restClient.reviews.hedge.percentile=0",
+                "restClient.reviews.hedge.minDelay=300ms"
+        }
+)
 public class MoviesControllerIntgTest {
+
+    private static final int DOWNSTREAM_DELAY_MS = 500;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @TestConfiguration
+    static class WireMockThreads {
+
+        // fixed delays hold a WireMock thread while they sleep, and the hedged and timed out calls of earlier
+        // tests may still be sleeping. Too few threads would queue the calls of the concurrency test.
+        @Bean
+        WireMockConfigurationCustomizer wireMockThreads() {
+            return options -> options.containerThreads(50);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        webTestClient = webTestClient.mutate()
+                .responseTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        circuitBreakerRegistry.getAllCircuitBreakers()
+                .forEach(circuitBreaker -> circuitBreaker.reset());
+    }
+
+    @Test
+    void retrieveMovieById() {
+
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(2, movie.getReviewList().size());
+                });
+    }
+
+    @Test
+    void retrieveMovieById_404() {
+
+        var movieId = "notfound";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse().withStatus(404)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(DOWNSTREAM_DELAY_MS)));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class)
+                .isEqualTo("There is no MovieInfo available for the passed in Id : notfound");
+    }
+
+    @Test
+    void retrieveMovieById_reviews_404() {
+
+        var movieId = "noreviews";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse().withStatus(404)));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals(0, movie.getReviewList().size());
+                });
+    }
+
+    @Test
+    void retrieveMovieById_5xx() {
+
+        var movieId = "servererror";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("MovieInfo Service Unavailable")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().is5xxServerError()
+                .expectBody(String.class)
+                .isEqualTo("Server Exception in MoviesInfoService : MovieInfo Service Unavailable");
+    }
+
+    @Test
+    void retrieveMovieById_latencyIsMaxOfDownstreamCalls() {
+
+        var movieId = "slow";
+        stubFor(get(urlMatching("/v1/movieinfos/slow.*"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(DOWNSTREAM_DELAY_MS)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(DOWNSTREAM_DELAY_MS)));
+
+        // warm up connections and codecs so that only the downstream delays are measured,
+        // with another id as movie infos are cached
+        retrieveMovie(movieId + "-warmup");
+
+        var start = System.nanoTime();
+        retrieveMovie(movieId);
+        var elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertTrue(elapsedMs >= DOWNSTREAM_DELAY_MS, "elapsed " + elapsedMs + "ms");
+        assertTrue(elapsedMs < 2 * DOWNSTREAM_DELAY_MS, "elapsed " + elapsedMs + "ms, downstream calls ran sequentially");
+    }
+
+    @Test
+    void retrieveMovieById_hedgesSlowReviewCall() {
+
+        var movieId = "hedged";
+        stubFor(get(urlMatching("/v1/movieinfos/hedged.*"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId + "-warmup"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        // the first review call hangs past the hedge delay, the hedged call answers at once
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .inScenario("hedge")
+                .whenScenarioStateIs(STARTED)
+                .willSetStateTo("hedged")
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(3000)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .inScenario("hedge")
+                .whenScenarioStateIs("hedged")
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        retrieveMovie(movieId + "-warmup");
+
+        var start = System.nanoTime();
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals(2, movie.getReviewList().size());
+                });
+        var elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertTrue(elapsedMs < 2000, "elapsed " + elapsedMs + "ms, the hedged call did not win");
+        verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_hedgeOutlivesAFailedFirstAttempt() {
+
+        var movieId = "hedgeoutlives";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        // the first attempt fails once the hedge is on its way, the hedge answers after that
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .inScenario("hedge outlives")
+                .whenScenarioStateIs(STARTED)
+                .willSetStateTo("hedged")
+                .willReturn(aResponse()
+                        .withStatus(503)
+                        .withBody("Review Service Unavailable")
+                        .withFixedDelay(700)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .inScenario("hedge outlives")
+                .whenScenarioStateIs("hedged")
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(1000)));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals(2, movie.getReviewList().size());
+                });
+
+        // the hedge answered, the failure did not cancel it for a retry
+        verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_retriesReviewServerError() {
+
+        var movieId = "retried";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .inScenario("retry")
+                .whenScenarioStateIs(STARTED)
+                .willSetStateTo("recovered")
+                .willReturn(aResponse()
+                        .withStatus(503)
+                        .withBody("Review Service Unavailable")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .inScenario("retry")
+                .whenScenarioStateIs("recovered")
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        // the server error comes back before the hedge delay, a failed first attempt sends no hedge
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals(2, movie.getReviewList().size());
+                });
+
+        verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_doesNotRetryReviewClientError() {
+
+        var movieId = "badrequest";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(400)
+                        .withBody("Invalid movieInfoId")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().is5xxServerError();
+
+        verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_cachesMovieInfo() {
+
+        var movieId = "cached";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        retrieveMovie(movieId);
+        retrieveMovie(movieId);
+
+        verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+        verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void retrieveMovies_batchesDownstreamCalls() {
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos"))
+                .withQueryParam("ids", matching(".+"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("[" +
+                                "{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"]}," +
+                                "{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008,\"cast\":[\"Christian Bale\"]}" +
+                                "]")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", matching(".+"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movie-reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies?ids=2,1,3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var movies = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(movies);
+                    assertEquals(2, movies.size());
+                    assertEquals("2", movies.get(0).getMovieInfo().getMovieInfoId());
+                    assertEquals(0, movies.get(0).getReviewList().size());
+                    assertEquals("1", movies.get(1).getMovieInfo().getMovieInfoId());
+                    assertEquals(2, movies.get(1).getReviewList().size());
+                });
+
+        verify(1, getRequestedFor(urlPathEqualTo("/v1/movieinfos"))
+                .withQueryParam("ids", matching("[123],[123],[123]")));
+        verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo("2,1,3")));
+    }
+
+    @Test
+    void retrieveMovies_followsReviewsPastThePerMovieCap() {
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos"))
+                .withQueryParam("ids", matching(".+"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("[" +
+                                "{\"movieInfoId\":\"11\",\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"]}," +
+                                "{\"movieInfoId\":\"12\",\"name\":\"The Dark Knight\",\"year\":2008,\"cast\":[\"Christian Bale\"]}" +
+                                "]")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", matching("1[12],1[12]"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("[" +
+                                "{\"movieInfoId\":11,\"reviews\":[{\"reviewId\":\"a\",\"movieInfoId\":11,\"rating\":9.0}],\"hasMore\":true}," +
+                                "{\"movieInfoId\":12,\"reviews\":[{\"reviewId\":\"d\",\"movieInfoId\":12,\"rating\":8.0}],\"hasMore\":false}" +
+                                "]")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo("11"))
+                .withQueryParam("after", equalTo("a"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("[{\"reviewId\":\"b\",\"movieInfoId\":11,\"rating\":7.0}," +
+                                "{\"reviewId\":\"c\",\"movieInfoId\":11,\"rating\":6.0}]")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo("11"))
+                .withQueryParam("after", equalTo("c"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("[]")));
+
+        webTestClient.get()
+                .uri("/v1/movies?ids=11,12")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var movies = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(movies);
+                    assertEquals(2, movies.size());
+                    assertEquals(3, movies.get(0).getReviewList().size());
+                    assertEquals("c", movies.get(0).getReviewList().get(2).getReviewId());
+                    assertEquals(1, movies.get(1).getReviewList().size());
+                });
+
+        verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo("12"))
+                .withQueryParam("after", matching(".+")));
+    }
+
+    @Test
+    void retrieveMovieById_reviewsCircuitOpen() {
+
+        var movieId = "reviewscircuitopen";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        circuitBreakerRegistry.circuitBreaker(ResilienceConfig.REVIEWS).transitionToOpenState();
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(0, movie.getReviewList().size());
+                    assertTrue(movie.isPartial());
+                });
+
+        verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_movieInfoCircuitOpen() {
+
+        var movieId = "movieinfocircuitopen";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        circuitBreakerRegistry.circuitBreaker(ResilienceConfig.MOVIES_INFO).transitionToOpenState();
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        verify(0, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_partialWhenReviewsMissTheDeadline() {
+
+        var movieId = "partial";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(3000)));
+
+        var start = System.currentTimeMillis();
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .header(Deadline.HEADER, "1000")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(0, movie.getReviewList().size());
+                    assertTrue(movie.isPartial());
+                });
+        var elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed < 2000, "response took " + elapsed + "ms");
+        verify(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .withHeader(Deadline.HEADER, matching("\\d+")));
+    }
+
+    @Test
+    void retrieveMovieById_forwardsTheDeadlineToMovieInfo() {
+
+        var movieId = "deadlineforwarded";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .header(Deadline.HEADER, "2000")
+                .exchange()
+                .expectStatus().isOk();
+
+        // the movie info is loaded by the cache, outside of the request
+        verify(getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId))
+                .withHeader(Deadline.HEADER, matching("\\d+")));
+    }
+
+    @Test
+    void retrieveMovies_forwardsTheDeadlineToBatchedCalls() {
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos"))
+                .withQueryParam("ids", matching(".+"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("[" +
+                                "{\"movieInfoId\":\"21\",\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"]}," +
+                                "{\"movieInfoId\":\"22\",\"name\":\"The Dark Knight\",\"year\":2008,\"cast\":[\"Christian Bale\"]}" +
+                                "]")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", matching(".+"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("[]")));
+
+        webTestClient.get()
+                .uri("/v1/movies?ids=21,22")
+                .header(Deadline.HEADER, "2000")
+                .exchange()
+                .expectStatus().isOk();
+
+        // both batches are dispatched by the batch loaders, outside of the request
+        verify(getRequestedFor(urlPathEqualTo("/v1/movieinfos"))
+                .withQueryParam("ids", matching("2[12],2[12]"))
+                .withHeader(Deadline.HEADER, matching("\\d+")));
+        verify(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", matching("2[12],2[12]"))
+                .withHeader(Deadline.HEADER, matching("\\d+")));
+    }
+
+    @Test
+    void retrieveMovieById_504WhenMovieInfoMissesTheDeadline() {
+
+        var movieId = "deadlineexceeded";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(3000)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .header(Deadline.HEADER, "500")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    void retrieveRawMovieById() {
+
+        var movieId = "raw";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}/raw", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(2, movie.getReviewList().size());
+                    assertFalse(movie.isPartial());
+                });
+    }
+
+    @Test
+    void retrieveRawMovieById_withoutReviews() {
+
+        var movieId = "rawnoreviews";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse().withStatus(404)));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}/raw", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.movieInfo.name").isEqualTo("Batman Begins")
+                .jsonPath("$.reviewList").isEmpty();
+    }
+
+    @Test
+    void retrieveRawMovieById_404() {
+
+        var movieId = "rawnotfound";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse().withStatus(404)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}/raw", movieId)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class)
+                .isEqualTo("There is no MovieInfo available for the passed in Id : " + movieId);
+    }
+
+    @Test
+    void streamMovieById() {
+
+        var movieId = "stream";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .withHeader(HttpHeaders.ACCEPT, equalTo(MediaType.APPLICATION_NDJSON_VALUE))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBody("{\"reviewId\":\"1\",\"movieInfoId\":1,\"comment\":\"Awesome Movie\",\"rating\":9.0}\n" +
+                                "{\"reviewId\":\"2\",\"movieInfoId\":1,\"comment\":\"Excellent Movie\",\"rating\":8.0}\n")));
+
+        var events = webTestClient.get()
+                .uri("/v1/movies/{id}/stream", movieId)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(MovieStreamEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .assertNext(event -> {
+                    assertEquals("Batman Begins", event.getMovieInfo().getName());
+                    assertNull(event.getReview());
+                })
+                .assertNext(event -> assertEquals("Awesome Movie", event.getReview().getComment()))
+                .assertNext(event -> assertEquals("Excellent Movie", event.getReview().getComment()))
+                .verifyComplete();
+    }
+
+    @Test
+    void streamMovieById_404() {
+
+        var movieId = "streamnotfound";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse().withStatus(404)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBody("")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}/stream", movieId)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class)
+                .isEqualTo("There is no MovieInfo available for the passed in Id : " + movieId);
+    }
+
+    private void retrieveMovie(String movieId) {
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk();
+    }
 }
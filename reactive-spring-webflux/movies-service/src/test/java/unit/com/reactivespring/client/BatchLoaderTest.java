@@ -0,0 +1,61 @@
+package com.reactivespring.client;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class BatchLoaderTest {
+
+    private static final Duration WINDOW = Duration.ofMillis(1);
+
+    private static final Duration TIMEOUT = Duration.ofMillis(200);
+
+    @Test
+    void stalledBatchFailsItsLoadsAndLaterLoadsStillGetThrough() {
+
+        var calls = new AtomicInteger();
+        var batchLoader = new BatchLoader<String, String>(keys -> calls.getAndIncrement() == 0
+                ? Mono.never()
+                : Mono.just(Map.of("1", "movie")), 100, WINDOW, TIMEOUT);
+
+        StepVerifier.create(batchLoader.load("1"))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+
+        StepVerifier.create(batchLoader.load("1"))
+                .expectNext("movie")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void moreStalledBatchesThanRunAtOnceAreQueued() {
+
+        // the loads come in one window apart, so every one is a batch of its own flushed by the window timer,
+        // and more of them stall than flatMap runs at once (256)
+        var batchLoader = new BatchLoader<String, String>(keys -> keys.contains("ok")
+                ? Mono.just(Map.of("ok", "movie"))
+                : Mono.never(), 100, WINDOW, Duration.ofSeconds(1));
+
+        var timedOutLoads = Flux.range(0, 300)
+                .delayElements(WINDOW.multipliedBy(2))
+                .flatMap(i -> batchLoader.load("stalled" + i)
+                        .onErrorResume(TimeoutException.class, ex -> Mono.just("timed out")), 300);
+
+        StepVerifier.create(timedOutLoads.count())
+                .expectNext(300L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(10));
+
+        StepVerifier.create(batchLoader.load("ok"))
+                .expectNext("movie")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,34 @@
+package com.reactivespring.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryBudgetTest {
+
+    @Test
+    void retriesAreBoundedByTheRequestRatio() {
+
+        var retryBudget = new RetryBudget(0.1, 0);
+
+        for (int i = 0; i < 100; i++) {
+            retryBudget.recordRequest();
+        }
+
+        var retries = 0;
+        while (retryBudget.tryAcquire()) {
+            retries++;
+        }
+        assertEquals(10, retries);
+    }
+
+    @Test
+    void minimumRetriesAreAllowedWithoutTraffic() {
+
+        var retryBudget = new RetryBudget(0.1, 2);
+
+        assertTrue(retryBudget.tryAcquire());
+        assertTrue(retryBudget.tryAcquire());
+        assertFalse(retryBudget.tryAcquire());
+    }
+}
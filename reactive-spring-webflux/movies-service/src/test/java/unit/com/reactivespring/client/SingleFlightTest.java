@@ -0,0 +1,140 @@
+package com.reactivespring.client;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void concurrentCallersShareOneCall() {
+
+        var subscriptions = new AtomicInteger();
+        var downstream = Sinks.many().unicast().<String>onBackpressureBuffer();
+        var call = downstream.asFlux()
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        var first = singleFlight.execute("1", () -> call);
+        var second = singleFlight.execute("1", () -> call);
+
+        StepVerifier.create(Flux.merge(first, second))
+                .then(() -> {
+                    downstream.tryEmitNext("review");
+                    downstream.tryEmitComplete();
+                })
+                .expectNext("review", "review")
+                .verifyComplete();
+
+        assertEquals(1, subscriptions.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void lateCallerStillGetsTheWholeResult() {
+
+        var subscriptions = new AtomicInteger();
+        var downstream = Sinks.many().unicast().<String>onBackpressureBuffer();
+        var call = downstream.asFlux()
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        var late = new ArrayList<String>();
+
+        StepVerifier.create(singleFlight.execute("1", () -> call))
+                .then(() -> downstream.tryEmitNext("first"))
+                .expectNext("first")
+                .then(() -> singleFlight.execute("1", () -> call).subscribe(late::add))
+                .then(() -> {
+                    downstream.tryEmitNext("second");
+                    downstream.tryEmitComplete();
+                })
+                .expectNext("second")
+                .verifyComplete();
+
+        assertEquals(List.of("first", "second"), late);
+        assertEquals(1, subscriptions.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void callerAfterTheCallCompletedStartsANewOne() {
+
+        var subscriptions = new AtomicInteger();
+        var call = Flux.just("review")
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+        var next = new ArrayList<String>();
+
+        // like a client sending its next request as soon as it has the response
+        StepVerifier.create(singleFlight.execute("1", () -> call)
+                        .doOnComplete(() -> singleFlight.execute("1", () -> call).subscribe(next::add)))
+                .expectNext("review")
+                .verifyComplete();
+
+        assertEquals(List.of("review"), next);
+        assertEquals(2, subscriptions.get());
+    }
+
+    @Test
+    void oneCallerCancellingDoesNotCancelTheOthers() {
+
+        var cancellations = new AtomicInteger();
+        var downstream = Sinks.many().unicast().<String>onBackpressureBuffer();
+        var call = downstream.asFlux()
+                .doOnCancel(cancellations::incrementAndGet);
+
+        var cancelled = singleFlight.execute("1", () -> call).subscribe();
+        var remaining = singleFlight.execute("1", () -> call);
+
+        StepVerifier.create(remaining)
+                .then(() -> {
+                    cancelled.dispose();
+                    downstream.tryEmitNext("review");
+                    downstream.tryEmitComplete();
+                })
+                .expectNext("review")
+                .verifyComplete();
+
+        assertEquals(0, cancellations.get());
+    }
+
+    @Test
+    void lastCallerCancellingCancelsTheCall() {
+
+        var cancellations = new AtomicInteger();
+        var call = Flux.<String>never()
+                .doOnCancel(cancellations::incrementAndGet);
+
+        var first = singleFlight.execute("1", () -> call).subscribe();
+        var second = singleFlight.execute("1", () -> call).subscribe();
+
+        first.dispose();
+        assertEquals(0, cancellations.get());
+        second.dispose();
+        assertEquals(1, cancellations.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void differentKeysDoNotShare() {
+
+        var subscriptions = new AtomicInteger();
+        var call = Flux.just("review")
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        StepVerifier.create(Flux.merge(
+                        singleFlight.execute("1", () -> call),
+                        singleFlight.execute("2", () -> call)))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertEquals(2, subscriptions.get());
+    }
+}